@@ -0,0 +1,236 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.stream.IntStream;
+
+/**
+ * An offline job that fires every possible shot into every possible layout, groups the layouts by their signature
+ * (see LayoutSignature) and reports the groups with more than one member - sets of layouts that no amount of shooting
+ * can tell apart. It can also save those signatures as an AmbiguousLayoutSet for BlackBoxPanel to use.
+ *
+ * Usage: java [-Dblackbox.scalar=true] AmbiguousLayoutDetector [gridSize numBalls [outputFile]]
+ *      (blackbox.scalar traces one layout at a time, rather than 64, which is only useful for comparison.)
+ */
+public class AmbiguousLayoutDetector
+{
+    // layouts are handed out to the worker threads in blocks of this many ranks.
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int NUM_EXAMPLES = 10;
+
+    private final LayoutSpace space;
+    private final ShotTracer tracer;
+    private final boolean bitSliced;
+
+    public AmbiguousLayoutDetector(LayoutSpace space)
+    {
+        this(space, true);
+    }
+
+    /**
+     * @param space - the layouts to check; no more than LayoutSignature.MAX_LAYOUTS of them
+     * @param bitSliced - whether to trace 64 layouts at a time with BitSlicedShotTracer (much faster), rather than one
+     *                  at a time with ClassicShotTracer.
+     */
+    public AmbiguousLayoutDetector(LayoutSpace space, boolean bitSliced)
+    {
+        LayoutSignature.checkSpaceSize(space);
+        this.space = space;
+        this.bitSliced = bitSliced;
+        tracer = new ClassicShotTracer(space);
+    }
+
+    /**
+     * finds the fingerprint of every layout whose rank is in [startRank, endRank).
+     * @param startRank - the first rank (inclusive)
+     * @param endRank - the last rank (exclusive)
+     * @param fingerprintsOut - receives the fingerprints, in rank order; must hold at least (endRank-startRank) values.
+     */
+    public void fingerprintRange(long startRank, long endRank, long[] fingerprintsOut)
+    {
+        if (bitSliced)
+        {
+            fingerprintRangeBitSliced(startRank, endRank, fingerprintsOut);
+            return;
+        }
+        long[] layout = space.newLayout();
+        for (long rank = startRank; rank < endRank; rank++)
+        {
+            space.unrank(rank, layout);
+            fingerprintsOut[(int) (rank - startRank)] = LayoutSignature.fingerprint(tracer, layout);
+        }
+    }
+
+    /**
+     * does the same job as fingerprintRange(), 64 layouts at a time.
+     */
+    private void fingerprintRangeBitSliced(long startRank, long endRank, long[] fingerprintsOut)
+    {
+        BitSlicedShotTracer slicedTracer = new BitSlicedShotTracer(space);
+        int numEdges = space.getNumEdges();
+        long[][] layouts = new long[BitSlicedShotTracer.LANES][space.getNumWords()];
+        long[] cellLanes = new long[space.getNumCells()];
+        long[] exitLanes = new long[numEdges];
+        int[] laneResults = new int[BitSlicedShotTracer.LANES];
+        int[][] signatures = new int[BitSlicedShotTracer.LANES][numEdges];
+
+        for (long groupStart = startRank; groupStart < endRank; groupStart += BitSlicedShotTracer.LANES)
+        {
+            int count = (int) Math.min(BitSlicedShotTracer.LANES, endRank - groupStart);
+            for (int lane = 0; lane < count; lane++)
+                space.unrank(groupStart + lane, layouts[lane]);
+            long activeLanes = slicedTracer.sliceLayouts(layouts, count, cellLanes);
+
+            for (int edge = 0; edge < numEdges; edge++)
+            {
+                long hitLanes = slicedTracer.trace(cellLanes, activeLanes, edge, exitLanes);
+                slicedTracer.unsliceResults(exitLanes, hitLanes, laneResults);
+                for (int lane = 0; lane < count; lane++)
+                    signatures[lane][edge] = laneResults[lane];
+            }
+            for (int lane = 0; lane < count; lane++)
+                fingerprintsOut[(int) (groupStart - startRank) + lane] = LayoutSignature.fingerprint(signatures[lane]);
+        }
+    }
+
+    /**
+     * counts how many layouts have each signature, over the ranks in [startRank, endRank). The layouts are traced in
+     * parallel, in chunks; each chunk's fingerprints are then added to the map while holding its lock.
+     * @param startRank - the first rank (inclusive)
+     * @param endRank - the last rank (exclusive)
+     * @param counts - the map of fingerprint --> number of layouts that is added to.
+     */
+    public void countSignatures(long startRank, long endRank, LongIntOpenHashMap counts)
+    {
+        int numChunks = (int) ((endRank - startRank + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        IntStream.range(0, numChunks).parallel().forEach(chunk ->
+        {
+            long chunkStart = startRank + (long) chunk * CHUNK_SIZE;
+            long chunkEnd = Math.min(endRank, chunkStart + CHUNK_SIZE);
+            long[] fingerprints = new long[(int) (chunkEnd - chunkStart)];
+            fingerprintRange(chunkStart, chunkEnd, fingerprints);
+            synchronized (counts)
+            {
+                for (long fingerprint : fingerprints)
+                    counts.addTo(fingerprint, 1);
+            }
+        });
+    }
+
+    /**
+     * @param counts - the map of fingerprint --> number of layouts, from countSignatures()
+     * @return the fingerprints that belong to more than one layout.
+     */
+    public static AmbiguousLayoutSet findAmbiguousSignatures(LayoutSpace space, LongIntOpenHashMap counts)
+    {
+        int[] numAmbiguous = {0};
+        counts.forEach((fingerprint, count) ->
+        {
+            if (count > 1)
+                numAmbiguous[0]++;
+        });
+        long[] fingerprints = new long[numAmbiguous[0]];
+        int[] i = {0};
+        counts.forEach((fingerprint, count) ->
+        {
+            if (count > 1)
+                fingerprints[i[0]++] = fingerprint;
+        });
+        return new AmbiguousLayoutSet(space.getGridSize(), space.getNumBalls(), fingerprints);
+    }
+
+    /**
+     * goes back through every layout, collecting the ranks of the ones whose fingerprint is one of the given examples.
+     * @param examples - the fingerprints we want the members of
+     * @return for each example, the list of ranks of layouts with that fingerprint.
+     */
+    public ArrayList<ArrayList<Long>> findMembers(long[] examples)
+    {
+        ArrayList<ArrayList<Long>> members = new ArrayList<ArrayList<Long>>();
+        for (int e = 0; e < examples.length; e++)
+            members.add(new ArrayList<Long>());
+
+        long total = space.size();
+        int numChunks = (int) ((total + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        IntStream.range(0, numChunks).parallel().forEach(chunk ->
+        {
+            long chunkStart = (long) chunk * CHUNK_SIZE;
+            long chunkEnd = Math.min(total, chunkStart + CHUNK_SIZE);
+            long[] fingerprints = new long[(int) (chunkEnd - chunkStart)];
+            fingerprintRange(chunkStart, chunkEnd, fingerprints);
+            for (int j = 0; j < fingerprints.length; j++)
+                for (int e = 0; e < examples.length; e++)
+                    if (fingerprints[j] == examples[e])
+                        synchronized (members)
+                        {
+                            members.get(e).add(chunkStart + j);
+                        }
+        });
+        for (ArrayList<Long> group : members)
+            Collections.sort(group);
+        return members;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int gridSize = 8;
+        int numBalls = 5;
+        File outputFile = null;
+        if (args.length >= 2)
+        {
+            gridSize = Integer.parseInt(args[0]);
+            numBalls = Integer.parseInt(args[1]);
+        }
+        if (args.length >= 3)
+            outputFile = new File(args[2]);
+
+        LayoutSpace space = new LayoutSpace(gridSize, numBalls);
+        AmbiguousLayoutDetector detector = new AmbiguousLayoutDetector(space, !Boolean.getBoolean("blackbox.scalar"));
+        long total = space.size();
+        System.out.println("Tracing "+total+" layouts of "+numBalls+" balls in a "+gridSize+"x"+gridSize+" grid...");
+
+        long startTime = System.currentTimeMillis();
+        LongIntOpenHashMap counts = new LongIntOpenHashMap(total);
+        detector.countSignatures(0, total, counts);
+        AmbiguousLayoutSet ambiguous = findAmbiguousSignatures(space, counts);
+
+        long[] numLayoutsInClasses = {0};
+        int[] largestClass = {0};
+        counts.forEach((fingerprint, count) ->
+        {
+            if (count > 1)
+                numLayoutsInClasses[0] += count;
+            largestClass[0] = Math.max(largestClass[0], count);
+        });
+        System.out.println("Done in "+(System.currentTimeMillis() - startTime)+" ms.");
+        System.out.println(counts.size()+" distinct signatures.");
+        System.out.println(ambiguous.size()+" signatures are shared by more than one layout, covering "+
+                numLayoutsInClasses[0]+" layouts; the largest group has "+largestClass[0]+" layouts.");
+
+        // show a few of the groups, so we can see what makes them ambiguous.
+        long[] examples = new long[Math.min(NUM_EXAMPLES, ambiguous.size())];
+        int[] n = {0};
+        counts.forEach((fingerprint, count) ->
+        {
+            if (count > 1 && n[0] < examples.length)
+                examples[n[0]++] = fingerprint;
+        });
+        ArrayList<ArrayList<Long>> members = detector.findMembers(examples);
+        long[] layout = space.newLayout();
+        for (int e = 0; e < examples.length; e++)
+        {
+            System.out.println("Group "+(e+1)+":");
+            for (long rank : members.get(e))
+            {
+                space.unrank(rank, layout);
+                System.out.println("\t"+space.describe(layout));
+            }
+        }
+
+        if (outputFile != null)
+        {
+            ambiguous.save(outputFile);
+            System.out.println("Saved ambiguous signatures to "+outputFile+".");
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * The fingerprints of every signature that is shared by more than one layout, as found by AmbiguousLayoutDetector.
+ * BlackBoxPanel can use one of these to avoid dealing a layout that the player could never solve.
+ * The fingerprints are kept in a sorted array, so a lookup is a binary search with no allocation.
+ */
+public class AmbiguousLayoutSet
+{
+    private final int gridSize;
+    private final int numBalls;
+    private final long[] sortedFingerprints;
+
+    public AmbiguousLayoutSet(int gridSize, int numBalls, long[] fingerprints)
+    {
+        this.gridSize = gridSize;
+        this.numBalls = numBalls;
+        sortedFingerprints = fingerprints.clone();
+        Arrays.sort(sortedFingerprints);
+    }
+
+    public int getGridSize()
+    {
+        return gridSize;
+    }
+
+    public int getNumBalls()
+    {
+        return numBalls;
+    }
+
+    /**
+     * @return the number of ambiguous signatures (not layouts) in this set.
+     */
+    public int size()
+    {
+        return sortedFingerprints.length;
+    }
+
+    /**
+     * @param fingerprint - a value from LayoutSignature.fingerprint()
+     * @return whether some other layout has the same signature as the one with this fingerprint.
+     */
+    public boolean contains(long fingerprint)
+    {
+        return Arrays.binarySearch(sortedFingerprints, fingerprint) >= 0;
+    }
+
+    public void save(File file) throws IOException
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+        {
+            out.writeInt(gridSize);
+            out.writeInt(numBalls);
+            out.writeInt(sortedFingerprints.length);
+            for (long fingerprint : sortedFingerprints)
+                out.writeLong(fingerprint);
+        }
+    }
+
+    public static AmbiguousLayoutSet load(File file) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+        {
+            int gridSize = in.readInt();
+            int numBalls = in.readInt();
+            long[] fingerprints = new long[in.readInt()];
+            for (int i = 0; i < fingerprints.length; i++)
+                fingerprints[i] = in.readLong();
+            return new AmbiguousLayoutSet(gridSize, numBalls, fingerprints);
+        }
+    }
+}
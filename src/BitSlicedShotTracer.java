@@ -0,0 +1,230 @@
+/**
+ * Fires the same shot into 64 different layouts at once. Instead of one layout per bit set, the layouts are "sliced"
+ * by cell: cellLanes[cell] has bit L set if board L has a ball in that cell. Each bit position ("lane") is a separate
+ * board, so the ball tests, turns and moves of ClassicShotTracer become ANDs and ORs across all 64 boards.
+ *
+ * The shots in different lanes soon go their separate ways, so rather than keep one position per lane, we keep a lane
+ * mask for every (position, direction) the shot could be in, and only visit the ones that some lane is in. A lane
+ * drops out of every mask as soon as its shot exits or hits a ball.
+ *
+ * Like ClassicShotTracer, all the working storage is allocated up front - but that makes an instance NOT safe to
+ * share between threads; give each thread its own.
+ */
+public final class BitSlicedShotTracer
+{
+    //                                           RGT DWN LFT UP
+    private static final int[] DELTA_ROW    = {  0,  1,  0, -1};
+    private static final int[] DELTA_COLUMN = {  1,  0, -1,  0};
+
+    public static final int LANES = 64;
+
+    private final LayoutSpace space;
+    private final int stride;
+
+    // for each state (= position * 4 + direction), worked out once in the constructor:
+    private final int[] frontPosition;     // the position ahead.
+    private final int[] frontEdge;         // the edge number of the position ahead, or -1 if it is a MysteryBox.
+    private final int[] frontCell;         // the cell index of the position ahead, or -1.
+    private final int[] frontRightCell;    // the cell index ahead and to the right, or -1 if it isn't a MysteryBox.
+    private final int[] frontLeftCell;     // the cell index ahead and to the left, or -1.
+    private final int[] positionEdge;      // for each position, its edge number, or -1.
+
+    // the lanes in each state now, and after this step, plus lists of which states are in use.
+    private long[] currentLanes, nextLanes;
+    private int[] currentStates, nextStates;
+
+    public BitSlicedShotTracer(LayoutSpace space)
+    {
+        this.space = space;
+        int gridSize = space.getGridSize();
+        stride = gridSize + 2;
+        int numPositions = stride * stride;
+        int numStates = numPositions * 4;
+
+        frontPosition = new int[numStates];
+        frontEdge = new int[numStates];
+        frontCell = new int[numStates];
+        frontRightCell = new int[numStates];
+        frontLeftCell = new int[numStates];
+        positionEdge = new int[numPositions];
+
+        for (int r = 0; r < stride; r++)
+            for (int c = 0; c < stride; c++)
+            {
+                positionEdge[r * stride + c] = space.edgeIndexOf(r, c);
+                for (int d = 0; d < 4; d++)
+                {
+                    int state = (r * stride + c) * 4 + d;
+                    int frontR = r + DELTA_ROW[d];
+                    int frontC = c + DELTA_COLUMN[d];
+                    int right = (d+1)%4;
+                    int left = (d+3)%4;
+                    frontPosition[state] = isMysteryBox(frontR, frontC) ? frontR * stride + frontC : -1;
+                    frontEdge[state] = space.edgeIndexOf(frontR, frontC);
+                    frontCell[state] = cellIndexOrNone(frontR, frontC);
+                    frontRightCell[state] = cellIndexOrNone(frontR + DELTA_ROW[right], frontC + DELTA_COLUMN[right]);
+                    frontLeftCell[state] = cellIndexOrNone(frontR + DELTA_ROW[left], frontC + DELTA_COLUMN[left]);
+                }
+            }
+
+        currentLanes = new long[numStates];
+        nextLanes = new long[numStates];
+        currentStates = new int[numStates];
+        nextStates = new int[numStates];
+    }
+
+    public LayoutSpace getLayoutSpace()
+    {
+        return space;
+    }
+
+    /**
+     * slices up to 64 ordinary layouts into per-cell lane masks, with layouts[i] going in lane i.
+     * @param layouts - the bit sets of balls (see LayoutSpace)
+     * @param count - how many of the layouts to use (at most LANES)
+     * @param cellLanesOut - receives one lane mask per cell; must hold at least getNumCells() values.
+     * @return the mask of lanes that were filled in.
+     */
+    public long sliceLayouts(long[][] layouts, int count, long[] cellLanesOut)
+    {
+        for (int cell = 0; cell < space.getNumCells(); cell++)
+            cellLanesOut[cell] = 0;
+        for (int lane = 0; lane < count; lane++)
+            for (int w = 0; w < layouts[lane].length; w++)
+            {
+                long bits = layouts[lane][w];
+                while (bits != 0)
+                {
+                    int cell = w * 64 + Long.numberOfTrailingZeros(bits);
+                    cellLanesOut[cell] |= 1L << lane;
+                    bits &= bits - 1;
+                }
+            }
+        return (count == LANES) ? -1L : (1L << count) - 1;
+    }
+
+    /**
+     * fires a shot from the given edge into every board in activeLanes.
+     * @param cellLanes - for each cell, the mask of boards that have a ball there (see sliceLayouts())
+     * @param activeLanes - the mask of boards to fire into
+     * @param entryEdge - the edge number the shot is fired from
+     * @param exitLanesOut - receives, for each edge number, the mask of boards whose shot came out there; must hold at
+     *                     least getNumEdges() values.
+     * @return the mask of boards whose shot hit a ball.
+     */
+    public long trace(long[] cellLanes, long activeLanes, int entryEdge, long[] exitLanesOut)
+    {
+        for (int edge = 0; edge < space.getNumEdges(); edge++)
+            exitLanesOut[edge] = 0;
+        long hitLanes = 0;
+
+        int startPosition = space.edgeRow(entryEdge) * stride + space.edgeColumn(entryEdge);
+        int numCurrent = 1;
+        currentStates[0] = startPosition * 4 + space.edgeDirection(entryEdge);
+        currentLanes[currentStates[0]] = activeLanes;
+
+        // every lane visits each state at most once, so no shot can take more steps than there are states.
+        for (int step = 0; numCurrent > 0; step++)
+        {
+            if (step > currentLanes.length)
+                throw new IllegalStateException("A shot from edge "+entryEdge+" never came out.");
+            int numNext = 0;
+            for (int i = 0; i < numCurrent; i++)
+            {
+                int state = currentStates[i];
+                long lanes = currentLanes[state];
+                currentLanes[state] = 0;
+
+                // the shot is at an edge facing outward - it exits ahead of itself.
+                if (frontEdge[state] >= 0)
+                {
+                    exitLanesOut[frontEdge[state]] |= lanes;
+                    continue;
+                }
+
+                long ballAhead = cellLanes[frontCell[state]];
+                hitLanes |= lanes & ballAhead;
+                lanes &= ~ballAhead;
+
+                long ballFrontRight = (frontRightCell[state] >= 0) ? cellLanes[frontRightCell[state]] : 0;
+                long turnLeftLanes = lanes & ballFrontRight;
+                lanes &= ~ballFrontRight;
+
+                long ballFrontLeft = (frontLeftCell[state] >= 0) ? cellLanes[frontLeftCell[state]] : 0;
+                long turnRightLanes = lanes & ballFrontLeft;
+                lanes &= ~ballFrontLeft;
+
+                int position = state >> 2;
+                int d = state & 3;
+                if (positionEdge[position] >= 0)
+                {
+                    // turning in place at the entry EdgeBox means the shot comes straight back out.
+                    exitLanesOut[positionEdge[position]] |= turnLeftLanes | turnRightLanes;
+                }
+                else
+                {
+                    numNext = addLanes(position * 4 + (d+3)%4, turnLeftLanes, numNext);
+                    numNext = addLanes(position * 4 + (d+1)%4, turnRightLanes, numNext);
+                }
+                numNext = addLanes(frontPosition[state] * 4 + d, lanes, numNext);
+            }
+
+            long[] swapLanes = currentLanes;
+            currentLanes = nextLanes;
+            nextLanes = swapLanes;
+            int[] swapStates = currentStates;
+            currentStates = nextStates;
+            nextStates = swapStates;
+            numCurrent = numNext;
+        }
+        return hitLanes;
+    }
+
+    /**
+     * turns the output of trace() back into one result per board, in the same form as ShotTracer.trace().
+     * @param exitLanes - the exit masks from trace()
+     * @param hitLanes - the hit mask from trace()
+     * @param resultsOut - receives, for each lane, the exit edge number or ShotTracer.HIT.
+     */
+    public void unsliceResults(long[] exitLanes, long hitLanes, int[] resultsOut)
+    {
+        for (int edge = 0; edge < space.getNumEdges(); edge++)
+        {
+            long lanes = exitLanes[edge];
+            while (lanes != 0)
+            {
+                resultsOut[Long.numberOfTrailingZeros(lanes)] = edge;
+                lanes &= lanes - 1;
+            }
+        }
+        while (hitLanes != 0)
+        {
+            resultsOut[Long.numberOfTrailingZeros(hitLanes)] = ShotTracer.HIT;
+            hitLanes &= hitLanes - 1;
+        }
+    }
+
+    /**
+     * adds lanes to the given state for the next step, putting the state on the list if it wasn't already there.
+     * @return the new length of the list.
+     */
+    private int addLanes(int state, long lanes, int numNext)
+    {
+        if (lanes == 0)
+            return numNext;
+        if (nextLanes[state] == 0)
+            nextStates[numNext++] = state;
+        nextLanes[state] |= lanes;
+        return numNext;
+    }
+
+    private boolean isMysteryBox(int r, int c)
+    {
+        return r > 0 && r < stride-1 && c > 0 && c < stride-1;
+    }
+
+    private int cellIndexOrNone(int r, int c)
+    {
+        return isMysteryBox(r, c) ? space.cellIndex(r, c) : -1;
+    }
+}
@@ -10,6 +10,17 @@ public interface  BlackBoxCell
 
     public void drawSelf(Graphics g);
 
+    /**
+     * draws the part of this cell that never changes - its fill and outline. BlackBoxPanel caches this layer as an
+     * image, so it is only drawn again when the window changes size.
+     */
+    public void drawBackground(Graphics g);
+
+    /**
+     * draws the part of this cell that depends on its status, on top of drawBackground().
+     */
+    public void drawContents(Graphics g);
+
     public void setStatus(int s);
 
     public int getStatus();
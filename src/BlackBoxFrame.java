@@ -7,17 +7,37 @@ public class BlackBoxFrame extends JFrame implements ActionListener
 {
     private BlackBoxPanel myPanel;
     private JButton revealResetButton;
+    private JCheckBox animateCheckBox;
+    private JButton replayButton;
 
     public BlackBoxFrame()
+    {
+        this(null);
+    }
+
+    /**
+     * @param ambiguousLayouts - signatures of unsolvable layouts for the panel to avoid, or null.
+     */
+    public BlackBoxFrame(AmbiguousLayoutSet ambiguousLayouts)
+    {
+        this(ambiguousLayouts, false);
+    }
+
+    /**
+     * @param ambiguousLayouts - signatures of unsolvable layouts for the panel to avoid, or null.
+     * @param fastStartup - whether to show the window before the sounds and fonts are loaded (see BlackBoxPanel).
+     */
+    public BlackBoxFrame(AmbiguousLayoutSet ambiguousLayouts, boolean fastStartup)
     {
         super("Black Box");
-        setSize(800, 800);
-        setResizable(false);
+        setMinimumSize(new Dimension(300, 300));
+        setResizable(true);
         getContentPane().setLayout(new BorderLayout());
-        myPanel = new BlackBoxPanel();
+        myPanel = new BlackBoxPanel(ambiguousLayouts, fastStartup);
         getContentPane().add(myPanel, BorderLayout.CENTER);
         getContentPane().add(createButtonPanel(), BorderLayout.NORTH);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        pack();  // sized to fit the board at a scale of 1.
         setVisible(true);
 
     }
@@ -31,6 +51,13 @@ public class BlackBoxFrame extends JFrame implements ActionListener
         revealResetButton.addActionListener(this);
         panel.add(revealResetButton);
 
+        animateCheckBox = new JCheckBox("Animate Shots");
+        animateCheckBox.addActionListener(this);
+        panel.add(animateCheckBox);
+
+        replayButton = new JButton("Replay");
+        replayButton.addActionListener(this);
+        panel.add(replayButton);
 
         return panel;
     }
@@ -51,6 +78,10 @@ public class BlackBoxFrame extends JFrame implements ActionListener
                 revealResetButton.setText("Reveal");
             }
         }
+        else if (e.getSource() == animateCheckBox)
+            myPanel.setAnimateShots(animateCheckBox.isSelected());
+        else if (e.getSource() == replayButton)
+            new ReplayViewerFrame(myPanel.getRecording());
 
     }
 }
@@ -2,6 +2,9 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
 
 public class BlackBoxPanel extends JPanel implements MouseListener
 {
@@ -10,9 +13,26 @@ public class BlackBoxPanel extends JPanel implements MouseListener
     private char latestLabel;
     private int numShots;
     private boolean revealedMode;
-    private SoundPlayer soundPlayer;
+    private volatile SoundPlayer soundPlayer;
     private boolean firstRun;
     private Font scoreFont;
+    private AmbiguousLayoutSet ambiguousLayouts;
+    private ClassicShotTracer layoutTracer;
+    private ShotAnimator shotAnimator;
+    private boolean animateShots;
+    private BoardLayerCache layerCache;
+    private GameRecording recording;
+    private boolean replayMode;
+    private boolean initialized;         // whether the sounds and fonts are ready.
+    private boolean firstFramePainted;
+    private boolean viewOnly;
+    private boolean[][] reservedEdges;  // EdgeBoxes waiting for the result of an animated shot that is still moving.
+
+    // how the board's fixed coordinates map onto the panel - recalculated only when the panel changes size.
+    private int transformWidth, transformHeight;
+    private double boardScale;
+    private double boardOffsetX, boardOffsetY;
+    private final AffineTransform boardTransform = new AffineTransform();
 
     // constants
     private final int LEFT_MARGIN = 100;
@@ -21,25 +41,88 @@ public class BlackBoxPanel extends JPanel implements MouseListener
     private final int NUM_BALLS = 5;
     private final int MYSTERY_BOX_GRID_SIZE = 8;
 
+    // the size of the area (in the cells' coordinates) that is scaled to fit the panel. The panel's preferred size is
+    //  exactly this, so a pack()ed window draws at a scale of 1, with crisp text and cell edges.
+    private final int BOARD_SIZE = (MYSTERY_BOX_GRID_SIZE+2)*BlackBoxCell.CELL_SIZE;
+    private final int DESIGN_WIDTH = LEFT_MARGIN + BOARD_SIZE + LEFT_MARGIN;
+    private final int DESIGN_HEIGHT = TOP_MARGIN + BOARD_SIZE + TOP_MARGIN/4;
+
     public static final int DIRECTION_RIGHT = 0;
     public static final int DIRECTION_DOWN = 1;
     public static final int DIRECTION_LEFT = 2;
     public static final int DIRECTION_UP = 3;
     //                               RGT   DWN    LFT    UP
     private final int[][] DELTAS = {{0,1},{1,0},{0,-1},{-1,0}};
+    private static final Color REVEALED_COLOR = new Color(200,200,255);
     // Note: the size (in pixels) of the cells is a constant in BlackBoxCell, so you can refer to it as
     //        BlackBoxCell.CELL_SIZE.
 
 
     public BlackBoxPanel()
+    {
+        this(null);
+    }
+
+    /**
+     * @param ambiguousLayouts - signatures of layouts that can't be solved, which reset() should avoid dealing; may be
+     *                         null, in which case any layout may be dealt.
+     */
+    public BlackBoxPanel(AmbiguousLayoutSet ambiguousLayouts)
+    {
+        this(ambiguousLayouts, false);
+    }
+
+    /**
+     * @param ambiguousLayouts - signatures of layouts that can't be solved, which reset() should avoid dealing; may be
+     *                         null, in which case any layout may be dealt.
+     * @param deferInitialization - if true, the panel can be shown straight away: the sounds, the fonts and the cached
+     *                            picture of the board are prepared on background threads, and until they are ready,
+     *                            sounds are skipped and the board is drawn without them. If false, everything is
+     *                            ready before the constructor returns.
+     */
+    public BlackBoxPanel(AmbiguousLayoutSet ambiguousLayouts, boolean deferInitialization)
+    {
+        this(ambiguousLayouts, deferInitialization, false);
+    }
+
+    /**
+     * creates a panel that only displays boards handed to it with showSnapshot() - e.g., for ReplayViewerFrame. It has
+     * no sounds or shot animation, ignores the mouse, doesn't deal any balls of its own and doesn't count towards
+     * GameMetrics, so it is cheap to create and leaves nothing open when its window closes. As it has no game of its
+     * own, reset() and setAnimateShots(true) throw an IllegalStateException.
+     */
+    public static BlackBoxPanel createViewOnly()
+    {
+        return new BlackBoxPanel(null, false, true);
+    }
+
+    private BlackBoxPanel(AmbiguousLayoutSet ambiguousLayouts, boolean deferInitialization, boolean viewOnly)
     {
         super();
+        this.viewOnly = viewOnly;
+        layoutTracer = new ClassicShotTracer(new LayoutSpace(MYSTERY_BOX_GRID_SIZE, NUM_BALLS));
+        if (!viewOnly)
+        {
+            shotAnimator = new ShotAnimator(this, layoutTracer, LEFT_MARGIN, TOP_MARGIN);
+            addMouseListener(this);
+        }
+        setAmbiguousLayouts(ambiguousLayouts);
         setBackground(Color.LIGHT_GRAY);
-        addMouseListener(this);
-        loadSounds();
+        setPreferredSize(new Dimension(DESIGN_WIDTH, DESIGN_HEIGHT));
+        if (viewOnly)
+        {
+            scoreFont = new Font("Times",Font.PLAIN, 18);
+            initialized = true;
+        }
+        else if (!deferInitialization)
+        {
+            loadSounds();
+            scoreFont = new Font("Times",Font.PLAIN, 18);
+            initialized = true;
+        }
         firstRun = true;
-        scoreFont = new Font("Times",Font.PLAIN, 18);
         myGrid = new BlackBoxCell[MYSTERY_BOX_GRID_SIZE+2][MYSTERY_BOX_GRID_SIZE+2];
+        reservedEdges = new boolean[MYSTERY_BOX_GRID_SIZE+2][MYSTERY_BOX_GRID_SIZE+2];
 
         for (int i=1; i<=MYSTERY_BOX_GRID_SIZE; i++)
         {
@@ -52,22 +135,203 @@ public class BlackBoxPanel extends JPanel implements MouseListener
                 myGrid[k][i] = new EdgeBox(LEFT_MARGIN + i * BlackBoxCell.CELL_SIZE, TOP_MARGIN + k * BlackBoxCell.CELL_SIZE);
             }
         }
+        layerCache = new BoardLayerCache(myGrid, LEFT_MARGIN, TOP_MARGIN, BOARD_SIZE);
+        if (deferInitialization)
+        {
+            layerCache.setBackgroundRebuild(this::repaint);
+            startDeferredInitialization();
+        }
 
-        reset();
+        if (viewOnly)
+        {
+            clearBoard();
+            recording = new GameRecording(layoutTracer.getLayoutSpace(), getBallLayout());
+            replayMode = true;
+        }
+        else
+            reset();
+    }
+
+    /**
+     * prepares the fonts and then the sounds on a background thread, handing each over to the panel (on the Swing event
+     * thread) as soon as it is ready.
+     */
+    private void startDeferredInitialization()
+    {
+        Thread thread = new Thread(() ->
+        {
+            Font font = prepareFonts();
+            SwingUtilities.invokeLater(() ->
+            {
+                scoreFont = font;
+                repaint();
+            });
+            try
+            {
+                loadSounds();
+            }
+            catch (RuntimeException rExp)
+            {
+                // e.g., no audio device - carry on without sound rather than never becoming ready.
+                System.out.println("Error loading sounds: "+rExp);
+            }
+            SwingUtilities.invokeLater(() ->
+            {
+                initialized = true;
+                checkInteractive();
+            });
+        }, "BlackBox startup");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     /**
-     * preload sound files for more responsive sound playback
+     * creates the fonts and draws some text with each of them off screen, so that the (slow) first use of the font
+     * system is over with before the panel is painted with them.
+     * @return the font for the number of shots.
+     */
+    private Font prepareFonts()
+    {
+        Font font = new Font("Times",Font.PLAIN, 18);
+        Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(font);
+        g.drawString("Number of Shots Taken: 0123456789", 0, 0);
+        g.setFont(EdgeBox.getEdgeFont());
+        g.drawString("ABCDEFGHIJKLMNOPQRSTUVWXYZ?", 0, 0);
+        g.dispose();
+        return font;
+    }
+
+    /**
+     * records the time to interactive, once the panel has been painted and everything it needs is ready.
+     */
+    private void checkInteractive()
+    {
+        if (initialized && firstFramePainted)
+            GameMetrics.markInteractive();
+    }
+
+    /**
+     * preload sound files for more responsive sound playback. The player is only handed to the panel once every sound is
+     * loaded, so this is safe to call from a background thread.
      */
     public void loadSounds()
     {
-        soundPlayer = new SoundPlayer();
-        soundPlayer.loadSound("EnergyBounce.wav"); // Energy Bounce by "magnuswalker" at https://freesound.org/s/523088/ shared via Creative Commons
-        soundPlayer.loadSound("Punch.wav"); // "Martial arts fast punch" at https://mixkit.co/free-sound-effects/
-        soundPlayer.loadSound("Chirp.wav"); // "Retro game notification" at https://mixkit.co/free-sound-effects/
-        soundPlayer.loadSound("Hmm.wav"); // Hmm sound by "DAN2008" at https://freesound.org/s/165011/ shared via Creative Commons
-        soundPlayer.loadSound("Reveal.wav"); // Reveal sound by "GameAudio" at https://freesound.org/s/220171/ shared via Creative Commons
-        soundPlayer.loadSound("Reset.wav"); // Reset sound by "Wdomino" at https://freesound.org/s/508575/ shared via Creative Commons
+        SoundPlayer player = new SoundPlayer();
+        player.loadSound("EnergyBounce.wav"); // Energy Bounce by "magnuswalker" at https://freesound.org/s/523088/ shared via Creative Commons
+        player.loadSound("Punch.wav"); // "Martial arts fast punch" at https://mixkit.co/free-sound-effects/
+        player.loadSound("Chirp.wav"); // "Retro game notification" at https://mixkit.co/free-sound-effects/
+        player.loadSound("Hmm.wav"); // Hmm sound by "DAN2008" at https://freesound.org/s/165011/ shared via Creative Commons
+        player.loadSound("Reveal.wav"); // Reveal sound by "GameAudio" at https://freesound.org/s/220171/ shared via Creative Commons
+        player.loadSound("Reset.wav"); // Reset sound by "Wdomino" at https://freesound.org/s/508575/ shared via Creative Commons
+        soundPlayer = player;
+    }
+
+    /**
+     * plays the given sound - unless the sounds are still being loaded in the background, in which case it is skipped
+     * rather than making the player wait.
+     */
+    private void playSound(String soundFilename)
+    {
+        SoundPlayer player = soundPlayer;
+        if (player != null)
+            player.playSound(soundFilename);
+    }
+
+    /**
+     * sets the signatures of layouts that reset() should avoid dealing, because some other layout gives exactly the same
+     * result for every shot. (See AmbiguousLayoutDetector.)
+     * @param ambiguousLayouts - the set of ambiguous signatures, or null to allow any layout.
+     */
+    public void setAmbiguousLayouts(AmbiguousLayoutSet ambiguousLayouts)
+    {
+        if (ambiguousLayouts != null && (ambiguousLayouts.getGridSize() != MYSTERY_BOX_GRID_SIZE ||
+                                         ambiguousLayouts.getNumBalls() != NUM_BALLS))
+            throw new IllegalArgumentException("These ambiguous layouts are for a "+ambiguousLayouts.getGridSize()+
+                    "x"+ambiguousLayouts.getGridSize()+" grid with "+ambiguousLayouts.getNumBalls()+" balls.");
+        this.ambiguousLayouts = ambiguousLayouts;
+    }
+
+    /**
+     * turns on (or off) the animation of each shot's path as it is fired.
+     * @param animate - whether to animate shots
+     */
+    public void setAnimateShots(boolean animate)
+    {
+        if (animate && viewOnly)
+            throw new IllegalStateException("A view-only panel can't animate shots.");
+        animateShots = animate;
+        if (!animate && shotAnimator != null)
+            shotAnimator.stopAll();
+    }
+
+    public boolean getAnimateShots()
+    {
+        return animateShots;
+    }
+
+    /**
+     * asks Swing to repaint just part of the board, rather than the whole panel.
+     * @param x - left edge of the region, in the same coordinates as the cells' positions
+     * @param y - top edge of the region
+     * @param width - width of the region
+     * @param height - height of the region
+     */
+    public void repaintBoardRegion(int x, int y, int width, int height)
+    {
+        updateBoardTransform();
+        int left = (int) Math.floor(boardOffsetX + x * boardScale);
+        int top = (int) Math.floor(boardOffsetY + y * boardScale);
+        int right = (int) Math.ceil(boardOffsetX + (x + width) * boardScale);
+        int bottom = (int) Math.ceil(boardOffsetY + (y + height) * boardScale);
+        repaint(left, top, right - left + 1, bottom - top + 1);
+    }
+
+    /**
+     * works out the scale and position that fit the board into the panel (keeping it square and centered), if the
+     * panel's size has changed since last time.
+     */
+    private void updateBoardTransform()
+    {
+        if (getWidth() == transformWidth && getHeight() == transformHeight && boardScale > 0)
+            return;
+        transformWidth = getWidth();
+        transformHeight = getHeight();
+        boardScale = Math.min(transformWidth / (double) DESIGN_WIDTH, transformHeight / (double) DESIGN_HEIGHT);
+        if (boardScale <= 0)
+            boardScale = 1;
+        boardOffsetX = Math.round((transformWidth - DESIGN_WIDTH * boardScale) / 2);
+        boardOffsetY = Math.round((transformHeight - DESIGN_HEIGHT * boardScale) / 2);
+        boardTransform.setToTranslation(boardOffsetX, boardOffsetY);
+        boardTransform.scale(boardScale, boardScale);
+    }
+
+    /**
+     * @return the balls currently in the grid, as a LayoutSpace bit set.
+     */
+    public long[] getBallLayout()
+    {
+        long[] layout = layoutTracer.getLayoutSpace().newLayout();
+        for (int r = 1; r <= MYSTERY_BOX_GRID_SIZE; r++)
+            for (int c = 1; c <= MYSTERY_BOX_GRID_SIZE; c++)
+                if (((MysteryBox) myGrid[r][c]).hasBall())
+                    LayoutSpace.setBall(layout, layoutTracer.getLayoutSpace().cellIndex(r, c));
+        return layout;
+    }
+
+    /**
+     * replaces the balls in the grid with the given layout (e.g., to set up a particular board), without changing
+     * anything else.
+     * @param layout - the balls, as a LayoutSpace bit set
+     */
+    public void setBallLayout(long[] layout)
+    {
+        for (int r = 1; r <= MYSTERY_BOX_GRID_SIZE; r++)
+            for (int c = 1; c <= MYSTERY_BOX_GRID_SIZE; c++)
+                ((MysteryBox) myGrid[r][c]).setHasBall(
+                        LayoutSpace.hasBall(layout, layoutTracer.getLayoutSpace().cellIndex(r, c)));
+        repaint();
     }
 
     /**
@@ -185,20 +449,52 @@ public class BlackBoxPanel extends JPanel implements MouseListener
                 ((MysteryBox) myGrid[r][c]).setShouldShowBall(true);
         revealedMode = true;
         repaint();
-        soundPlayer.playSound("Reveal.wav");
+        playSound("Reveal.wav");
     }
 
     /**
      * resets the board, hiding content on edgeBoxes, re-randomizing balls and hiding them, resetting the latestLabel to
      * "A," resetting the shot count to zero, clearing the "revealedMode," and playing a sound.
+     * precondition: this isn't a view-only panel (see createViewOnly()).
      */
     public void reset()
     {
+        if (viewOnly)
+            throw new IllegalStateException("A view-only panel has no game to reset.");
+        long startTime = startTimer();
+        clearBoard();
+        placeRandomBalls();
+        // if we know which layouts can't be solved, keep re-dealing until we get one that can.
+        while (ambiguousLayouts != null &&
+               ambiguousLayouts.contains(LayoutSignature.fingerprint(layoutTracer, getBallLayout())))
+        {
+            for (int r=1; r<=MYSTERY_BOX_GRID_SIZE; r++)
+                for (int c=1; c<=MYSTERY_BOX_GRID_SIZE; c++)
+                    ((MysteryBox) myGrid[r][c]).setHasBall(false);
+            placeRandomBalls();
+        }
+        revealedMode = false;
+        replayMode = false;
+        recording = new GameRecording(layoutTracer.getLayoutSpace(), getBallLayout());
+        shotAnimator.cancelAll();
+        repaint();
+        if (!firstRun)
+            playSound("Reset.wav");
+        firstRun = false;
+        GameMetrics.stopTimer(GameMetrics.RESET_TIME, startTime);
+    }
 
+    /**
+     * blanks every cell and removes all the balls, and sets the label and shot count back to the start.
+     */
+    private void clearBoard()
+    {
         latestLabel = 'A';
+        numShots = 0;
         for (int r=0; r<=MYSTERY_BOX_GRID_SIZE+1; r++)
             for (int c=0; c<=MYSTERY_BOX_GRID_SIZE+1; c++)
             {
+                reservedEdges[r][c] = false;
                 if (myGrid[r][c] == null)
                     continue;
                 myGrid[r][c].setStatus(BlackBoxCell.STATUS_BLANK);
@@ -210,6 +506,14 @@ public class BlackBoxPanel extends JPanel implements MouseListener
                 else
                     ((EdgeBox) myGrid[r][c]).setMyLabel("");
             }
+    }
+
+    /**
+     * puts NUM_BALLS balls in random, distinct MysteryBoxes.
+     * precondition: none of the MysteryBoxes has a ball.
+     */
+    private void placeRandomBalls()
+    {
         for (int i=0; i<NUM_BALLS; i++)
         {
             int r1 = (int) (MYSTERY_BOX_GRID_SIZE * Math.random() + 1);
@@ -221,12 +525,6 @@ public class BlackBoxPanel extends JPanel implements MouseListener
             }
             ((MysteryBox) myGrid[r1][c1]).setHasBall(true);
         }
-        numShots = 0;
-        revealedMode = false;
-        repaint();
-        if (!firstRun)
-            soundPlayer.playSound("Reset.wav");
-        firstRun = false;
     }
 
     public void resetWithTestData()
@@ -241,6 +539,7 @@ public class BlackBoxPanel extends JPanel implements MouseListener
         ((MysteryBox)myGrid[1][6]).setHasBall(true);
         ((MysteryBox)myGrid[3][6]).setHasBall(true);
         ((MysteryBox)myGrid[6][2]).setHasBall(true);
+        recording = new GameRecording(layoutTracer.getLayoutSpace(), getBallLayout());
         repaint();
 
     }
@@ -248,24 +547,106 @@ public class BlackBoxPanel extends JPanel implements MouseListener
     @Override
     public void paintComponent(Graphics g)
     {
-
+        long startTime = startTimer();
         super.paintComponent(g);
 
-        g.setColor(Color.BLACK);
-        g.setFont(scoreFont);
-        g.drawString("Number of Shots Taken: "+ numShots, LEFT_MARGIN, TOP_MARGIN-20);
+        // everything is drawn in the cells' own coordinates, scaled to fit the panel.
+        updateBoardTransform();
+        Graphics2D g2 = (Graphics2D) g.create();
+        g2.transform(boardTransform);
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        if (scoreFont != null) // (the font may still be loading.)
+        {
+            g2.setColor(Color.BLACK);
+            g2.setFont(scoreFont);
+            g2.drawString("Number of Shots Taken: "+ numShots, LEFT_MARGIN, TOP_MARGIN-20);
+        }
 
         if (revealedMode)
         {
-            g.setColor(new Color(200,200,255));
-            g.fillRect(LEFT_MARGIN-3, TOP_MARGIN-3, (MYSTERY_BOX_GRID_SIZE+2)*BlackBoxCell.CELL_SIZE+6, (MYSTERY_BOX_GRID_SIZE+2)*BlackBoxCell.CELL_SIZE+6);
+            g2.setColor(REVEALED_COLOR);
+            g2.fillRect(LEFT_MARGIN-3, TOP_MARGIN-3, BOARD_SIZE+6, BOARD_SIZE+6);
         }
 
-        // now draw all the boxes.
+        // now draw all the boxes - the plain backgrounds come from the cache, then whatever is on top of them.
+        layerCache.draw(g2);
         for (int i=0; i<MYSTERY_BOX_GRID_SIZE+2; i++)
             for (int j=0; j<MYSTERY_BOX_GRID_SIZE+2; j++)
                 if (myGrid[i][j] != null)
-                    myGrid[i][j].drawSelf(g);
+                    myGrid[i][j].drawContents(g2);
+
+        // and any shots that are still moving go on top.
+        if (shotAnimator != null)
+            shotAnimator.paint(g2);
+        g2.dispose();
+        GameMetrics.stopTimer(GameMetrics.PAINT_TIME, startTime);
+        if (!firstFramePainted && !viewOnly)
+        {
+            firstFramePainted = true;
+            GameMetrics.markFirstFrame();
+            checkInteractive();
+        }
+    }
+
+    /**
+     * @param r - row
+     * @param c - column
+     * @return the status of the cell at (r, c) - one of the STATUS_ constants of MysteryBox or EdgeBox.
+     */
+    public int getCellStatus(int r, int c)
+    {
+        return myGrid[r][c].getStatus();
+    }
+
+    public int getNumShots()
+    {
+        return numShots;
+    }
+
+    /**
+     * @return the record of the current game so far - its balls and every shot and pencil mark since the last reset.
+     *         (This is the panel's own copy, which keeps growing as the game goes on.)
+     */
+    public GameRecording getRecording()
+    {
+        return recording;
+    }
+
+    /**
+     * makes the board show a moment from a recorded game, with the balls visible, without playing any sounds. The
+     * panel then ignores the mouse until the next reset(). (See ReplayTimeline and ReplayViewerFrame.)
+     * @param snapshot - what the board looked like at that moment
+     * @param layout - the balls for that game, as a LayoutSpace bit set
+     */
+    public void showSnapshot(BoardSnapshot snapshot, long[] layout)
+    {
+        LayoutSpace space = layoutTracer.getLayoutSpace();
+        for (int r = 1; r <= MYSTERY_BOX_GRID_SIZE; r++)
+            for (int c = 1; c <= MYSTERY_BOX_GRID_SIZE; c++)
+            {
+                MysteryBox box = (MysteryBox) myGrid[r][c];
+                int cell = space.cellIndex(r, c);
+                box.setHasBall(LayoutSpace.hasBall(layout, cell));
+                box.setShouldShowBall(true);
+                box.setStatus(snapshot.isPencilled(cell) ? MysteryBox.STATUS_PENCILLED : MysteryBox.STATUS_BLANK);
+            }
+        for (int edge = 0; edge < space.getNumEdges(); edge++)
+        {
+            EdgeBox box = (EdgeBox) myGrid[space.edgeRow(edge)][space.edgeColumn(edge)];
+            box.setStatus(snapshot.getEdgeStatus(edge));
+            box.setMyLabel(snapshot.getEdgeStatus(edge) == EdgeBox.STATUS_LABEL ?
+                           String.valueOf(snapshot.getEdgeLabel(edge)) : "");
+        }
+        numShots = snapshot.getNumShots();
+        latestLabel = snapshot.getLatestLabel();
+        replayMode = true;
+        if (shotAnimator != null)
+            shotAnimator.cancelAll();
+        for (boolean[] row : reservedEdges)
+            Arrays.fill(row, false);
+        repaint();
     }
 
     /**
@@ -280,21 +661,26 @@ public class BlackBoxPanel extends JPanel implements MouseListener
             myGrid[r][c].setStatus(MysteryBox.STATUS_PENCILLED);
         else
             myGrid[r][c].setStatus(MysteryBox.STATUS_BLANK);
-        soundPlayer.playSound("Hmm.wav");
+        recording.addPencilChange(r, c, myGrid[r][c].getStatus() == MysteryBox.STATUS_PENCILLED);
+        playSound("Hmm.wav");
     }
 
     /**
      * The user has just clicked on an EdgeBox. If it is a blank edgebox, then fire a shot inward from this edgeBox, see
      * where it comes out (if at all) and mark this edgebox (and the edgebox where it exited, if different); play a
-     * sound and increment the number of shots.
+     * sound and increment the number of shots. If shots are animated, the marks and the sound wait until the dot gets
+     * there, and no debug marks are left along the path.
      * Precondition: the box in myGrid at startPos is an EdgeBox.
      * @param startPos - the (r, c) of the clicked EdgeBox.
      */
     public void processShot(int[] startPos)
     {
+        recording.addShot(startPos[0], startPos[1]);
 
-        // if this is an edgeCell that already is showing something, then bail out now.
-        if (myGrid[startPos[0]][startPos[1]].getStatus() != BlackBoxCell.STATUS_BLANK)
+        // if this is an edgeCell that already is showing something (or soon will, when an animated shot gets there), then
+        //  bail out now.
+        if (myGrid[startPos[0]][startPos[1]].getStatus() != BlackBoxCell.STATUS_BLANK ||
+            reservedEdges[startPos[0]][startPos[1]])
             return;
 
         // identify the initial direction of movement for this shot, based on which edge of the board this is.
@@ -311,25 +697,112 @@ public class BlackBoxPanel extends JPanel implements MouseListener
 
         numShots++;
         int[] exitPos = findExitPoint(startPos,direction);
+        char label = claimLabel(startPos, exitPos);
+        if (animateShots)
+        {
+            // the dot shows the path, so don't give it away with debug marks; hold on to the result until it arrives.
+            clear_all_debug_marks();
+            setReserved(startPos, exitPos, true);
+            int entryEdge = layoutTracer.getLayoutSpace().edgeIndexOf(startPos[0], startPos[1]);
+            shotAnimator.start(getBallLayout(), entryEdge, () ->
+            {
+                setReserved(startPos, exitPos, false);
+                playSound(recordShotResult(startPos, exitPos, label));
+                repaint();
+            });
+        }
+        else
+            playSound(recordShotResult(startPos, exitPos, label));
+    }
+
+    /**
+     * marks (or unmarks) the EdgeBoxes at either end of a shot as waiting for its animation to arrive.
+     * @param startPos - the (r, c) of the EdgeBox the shot was fired from
+     * @param exitPos - the (r, c) of the EdgeBox where it comes out, or null if it hits a ball.
+     */
+    private void setReserved(int[] startPos, int[] exitPos, boolean reserved)
+    {
+        reservedEdges[startPos[0]][startPos[1]] = reserved;
+        if (exitPos != null)
+            reservedEdges[exitPos[0]][exitPos[1]] = reserved;
+    }
+
+    /**
+     * fires a whole series of shots in one go - e.g., to replay a recorded game. The EdgeBoxes, pencil marks and number
+     * of shots end up just as if processShot() had been called for each one; the differences are that the panel is
+     * repainted just once at the end, no shots are animated, (at most) a single sound is played, and the debug marks
+     * are all cleared - including those of any earlier shot - rather than leaving the last shot's path marked.
+     * Precondition: each of the startPositions is the (r, c) of an EdgeBox.
+     * @param startPositions - the (r, c) of the EdgeBox for each shot, in the order they are fired.
+     * @param playCue - if true, play the sound for the last shot that counted; if false, stay silent.
+     */
+    public void processShots(int[][] startPositions, boolean playCue)
+    {
+        long[] layout = getBallLayout();
+        LayoutSpace space = layoutTracer.getLayoutSpace();
+        String cue = null;
+        clear_all_debug_marks();
+        for (int[] startPos : startPositions)
+        {
+            recording.addShot(startPos[0], startPos[1]);
+            // just like processShot(), skip any edgeCell that is already showing something, or soon will.
+            if (myGrid[startPos[0]][startPos[1]].getStatus() != BlackBoxCell.STATUS_BLANK ||
+                reservedEdges[startPos[0]][startPos[1]])
+                continue;
+            numShots++;
+            int exitEdge = layoutTracer.trace(layout, space.edgeIndexOf(startPos[0], startPos[1]));
+            int[] exitPos = null;
+            if (exitEdge != ShotTracer.HIT)
+                exitPos = new int[]{space.edgeRow(exitEdge), space.edgeColumn(exitEdge)};
+            cue = recordShotResult(startPos, exitPos, claimLabel(startPos, exitPos));
+        }
+        repaint();
+        if (playCue && cue != null)
+            playSound(cue);
+    }
+
+    /**
+     * hands out the label for a shot that has just been fired - the next letter, if it came out somewhere other than
+     * where it went in. Labels are handed out as the shots are fired, so they stay in order even if animated shots
+     * arrive out of order.
+     * @param startPos - the (r, c) of the EdgeBox the shot was fired from.
+     * @param exitPos - the (r, c) of the EdgeBox where it came out, or null if it hit a ball.
+     * @return the label for the shot (meaningless if it hit a ball or came straight back).
+     */
+    private char claimLabel(int[] startPos, int[] exitPos)
+    {
+        char label = latestLabel;
+        if (exitPos != null && (startPos[0] != exitPos[0] || startPos[1] != exitPos[1]))
+            latestLabel++;
+        return label;
+    }
 
+    /**
+     * marks the EdgeBox(es) for a shot that has been fired, based on where it came out.
+     * @param startPos - the (r, c) of the EdgeBox the shot was fired from.
+     * @param exitPos - the (r, c) of the EdgeBox where it came out, or null if it hit a ball.
+     * @param label - the label from claimLabel(), for a shot that came out somewhere else.
+     * @return the name of the sound that goes with this result.
+     */
+    private String recordShotResult(int[] startPos, int[] exitPos, char label)
+    {
         if (exitPos == null) // if it didn't exit, that means we hit a ball.
         {
             myGrid[startPos[0]][startPos[1]].setStatus(EdgeBox.STATUS_HIT);
-            soundPlayer.playSound("Punch.wav");
+            return "Punch.wav";
         }
         else if (startPos[0] == exitPos[0] && startPos[1] == exitPos[1]) // if it came out the same place it went in...
         {
             myGrid[startPos[0]][startPos[1]].setStatus(EdgeBox.STATUS_REFLECT);
-            soundPlayer.playSound("EnergyBounce.wav");
+            return "EnergyBounce.wav";
         }
         else // if we have a distinct exit point from the entry point.
         {
             myGrid[startPos[0]][startPos[1]].setStatus(EdgeBox.STATUS_LABEL);
-            ((EdgeBox) myGrid[startPos[0]][startPos[1]]).setMyLabel(String.valueOf(latestLabel));
+            ((EdgeBox) myGrid[startPos[0]][startPos[1]]).setMyLabel(String.valueOf(label));
             myGrid[exitPos[0]][exitPos[1]].setStatus(EdgeBox.STATUS_LABEL);
-            ((EdgeBox) myGrid[exitPos[0]][exitPos[1]]).setMyLabel(String.valueOf(latestLabel));
-            soundPlayer.playSound("Chirp.wav");
-            latestLabel++;
+            ((EdgeBox) myGrid[exitPos[0]][exitPos[1]]).setMyLabel(String.valueOf(label));
+            return "Chirp.wav";
         }
     }
 
@@ -347,6 +820,8 @@ public class BlackBoxPanel extends JPanel implements MouseListener
         // p and d are the location of the shot - they change over the course of this method, but the pos and direction don't.
         int[] p = startingPosition;
         int d = direction;
+        long startTime = startTimer();
+        int steps = 0;
 
         clear_all_debug_marks();
 
@@ -366,12 +841,12 @@ public class BlackBoxPanel extends JPanel implements MouseListener
 
         while(true)
         {
-
+            steps++;
             int[] frontPoint = getPositionInFrontOf(p,d);
             if (myGrid[frontPoint[0]][frontPoint[1]] instanceof EdgeBox)
-                return frontPoint;
+                return recordTrace(startTime, steps, frontPoint);
             if (((MysteryBox)myGrid[frontPoint[0]][frontPoint[1]]).hasBall())
-                return null; // it's a hit!
+                return recordTrace(startTime, steps, null); // it's a hit!
 
             int[] rightFrontPoint = getPositionFrontRightOf(p,d);
             if (isMysteryBox(rightFrontPoint)&&((MysteryBox)myGrid[rightFrontPoint[0]][rightFrontPoint[1]]).hasBall())
@@ -391,13 +866,38 @@ public class BlackBoxPanel extends JPanel implements MouseListener
                 }
             }
             if (! isMysteryBox(p))
-                return p;
+                return recordTrace(startTime, steps, p);
 
 
-            (myGrid[p[0]][p[1]]).setStatus(MysteryBox.STATUS_DEBUG_SHOW);
+            // (but leave the player's own pencil marks alone.)
+            if ((myGrid[p[0]][p[1]]).getStatus() != MysteryBox.STATUS_PENCILLED)
+                (myGrid[p[0]][p[1]]).setStatus(MysteryBox.STATUS_DEBUG_SHOW);
         }
     }
 
+    /**
+     * @return GameMetrics.startTimer() - or 0, which records nothing, for a view-only panel.
+     */
+    private long startTimer()
+    {
+        return viewOnly ? 0 : GameMetrics.startTimer();
+    }
+
+    /**
+     * records the time and number of steps that findExitPoint() took, and passes its result straight back.
+     * @param startTime - the value GameMetrics.startTimer() returned when the trace began
+     * @param steps - how many times the trace went around its loop
+     * @param exitPoint - the result of the trace
+     * @return exitPoint, unchanged.
+     */
+    private int[] recordTrace(long startTime, int steps, int[] exitPoint)
+    {
+        GameMetrics.stopTimer(GameMetrics.TRACE_TIME, startTime);
+        if (startTime != 0)
+            GameMetrics.recordValue(GameMetrics.TRACE_STEPS, steps);
+        return exitPoint;
+    }
+
     /**
      * reset all of the mystery boxes that have the green debug marks back to the blank status without disturbing
      * any of the pencilled marks.
@@ -417,13 +917,16 @@ public class BlackBoxPanel extends JPanel implements MouseListener
      */
     public void mouseReleased(MouseEvent e)
     {
-        if (revealedMode) // ignore mouse in this panel if the balls are revealed.
+        if (revealedMode || replayMode) // ignore mouse in this panel if the balls are revealed.
             return;
 
         // find equivalent cell indexes for this mouse click. So r and c are not pixel locations, but indicators of
-        //  which row and column are being clicked.
-        int r = (e.getY()- TOP_MARGIN)/BlackBoxCell.CELL_SIZE;
-        int c = (e.getX()- LEFT_MARGIN)/BlackBoxCell.CELL_SIZE;
+        //  which row and column are being clicked. First, undo the scaling to get back to the cells' coordinates.
+        updateBoardTransform();
+        int y = (int) Math.floor((e.getY() - boardOffsetY) / boardScale);
+        int x = (int) Math.floor((e.getX() - boardOffsetX) / boardScale);
+        int r = Math.floorDiv(y - TOP_MARGIN, BlackBoxCell.CELL_SIZE);
+        int c = Math.floorDiv(x - LEFT_MARGIN, BlackBoxCell.CELL_SIZE);
 
         if (isMysteryBox(r,c))
         {
@@ -1,8 +1,37 @@
+import javax.swing.*;
+import java.io.File;
+import java.io.IOException;
+
 public class BlackBoxRunner
 {
     public static void main(String[] args)
     {
-        BlackBoxFrame app = new BlackBoxFrame();
+        GameMetrics.markStartupBegan();
+        // -Dblackbox.startup=fast shows the window straight away and loads the sounds and fonts in the background.
+        boolean fastStartup = System.getProperty("blackbox.startup", "eager").equals("fast");
+
+        // optionally, the name of a file written by AmbiguousLayoutDetector, so that we never deal an unsolvable board.
+        AmbiguousLayoutSet ambiguousLayouts = null;
+        if (args.length > 0)
+        {
+            try
+            {
+                ambiguousLayouts = AmbiguousLayoutSet.load(new File(args[0]));
+            }
+            catch (IOException ioExp)
+            {
+                System.out.println("Error loading ambiguous layouts file: "+args[0]);
+            }
+        }
+        // build the window on the Swing event thread; this thread carries on with the metrics meanwhile.
+        AmbiguousLayoutSet layoutsToAvoid = ambiguousLayouts;
+        SwingUtilities.invokeLater(() -> new BlackBoxFrame(layoutsToAvoid, fastStartup));
+
+        // timing of the hot paths is visible through JMX; with -Dblackbox.metrics.file=..., it is also written to a file.
+        GameMetrics.registerMBeans();
+        String metricsFile = System.getProperty("blackbox.metrics.file");
+        if (metricsFile != null)
+            GameMetrics.startPeriodicDump(metricsFile, Long.getLong("blackbox.metrics.period", 60));
 
     }
 }
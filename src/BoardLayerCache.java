@@ -0,0 +1,187 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a picture of the backgrounds of all the cells (see BlackBoxCell.drawBackground()), rendered at the exact
+ * number of screen pixels the board currently covers - including any HiDPI scaling of the display. Painting the board
+ * is then one image copy plus the few cells that have something on them. The picture is only redrawn when that scale
+ * changes, i.e., when the window is resized or moved to a display with a different scale.
+ *
+ * Normally the picture is redrawn right away, in draw(). After setBackgroundRebuild(), it is redrawn on a background
+ * thread instead, and draw() paints the cells directly until it is ready - so that neither the first frame nor a
+ * resize has to wait for it.
+ */
+public class BoardLayerCache
+{
+    private static ExecutorService rebuildExecutor;
+
+    private final BlackBoxCell[][] grid;
+    private final int left, top, size;
+
+    private volatile Picture picture;
+    private final AffineTransform imageTransform;
+    private Runnable onRebuilt;
+    private double requestedScale;  // guarded by this, as is rebuildQueued
+    private boolean rebuildQueued;
+
+    /**
+     * @param grid - the cells to draw (null entries are skipped)
+     * @param left - the x coordinate of the board's left edge, before any scaling
+     * @param top - the y coordinate of the board's top edge
+     * @param size - the width (and height) of the board
+     */
+    public BoardLayerCache(BlackBoxCell[][] grid, int left, int top, int size)
+    {
+        this.grid = grid;
+        this.left = left;
+        this.top = top;
+        this.size = size;
+        imageTransform = new AffineTransform();
+    }
+
+    /**
+     * makes the picture be redrawn on a background thread from now on.
+     * precondition: the cells' backgrounds are safe to draw from another thread - i.e., they depend only on things that
+     * don't change after the cells are created.
+     * @param onRebuilt - run on the Swing event thread each time a new picture is ready (typically, a repaint).
+     */
+    public void setBackgroundRebuild(Runnable onRebuilt)
+    {
+        this.onRebuilt = onRebuilt;
+    }
+
+    /**
+     * draws the cached backgrounds, first rebuilding them if the scale of g has changed.
+     * precondition: g's transform is only scaled and translated (not rotated), by the same amount in x and y.
+     * @param g - the Graphics to draw on, already transformed to the board's coordinates.
+     */
+    public void draw(Graphics2D g)
+    {
+        AffineTransform boardTransform = g.getTransform();
+        double scale = boardTransform.getScaleX();
+        Picture current = picture;
+        if (current == null || current.scale != scale)
+        {
+            if (onRebuilt == null)
+            {
+                current = new Picture(render(scale), scale);
+                picture = current;
+            }
+            else
+            {
+                requestRebuild(scale);
+                drawCells(g);
+                return;
+            }
+        }
+
+        // copy the picture pixel-for-pixel, at the device position of the board's top-left corner.
+        imageTransform.setToTranslation(Math.floor(boardTransform.getTranslateX() + left * scale),
+                                         Math.floor(boardTransform.getTranslateY() + top * scale));
+        g.setTransform(imageTransform);
+        g.drawImage(current.image, 0, 0, null);
+        g.setTransform(boardTransform);
+    }
+
+    /**
+     * asks for a picture at the given scale to be drawn in the background. At most one rebuild is queued at a time, and
+     * it draws whatever scale was asked for last - so dragging a window edge doesn't queue a picture for every size the
+     * window passed through.
+     */
+    private synchronized void requestRebuild(double scale)
+    {
+        requestedScale = scale;
+        if (rebuildQueued)
+            return;
+        rebuildQueued = true;
+        getRebuildExecutor().execute(this::rebuild);
+    }
+
+    /**
+     * draws pictures until one matches the latest requested scale, then lets the panel know. Runs on the rebuild thread.
+     */
+    private void rebuild()
+    {
+        double scale;
+        synchronized (this)
+        {
+            scale = requestedScale;
+        }
+        while (true)
+        {
+            picture = new Picture(render(scale), scale);
+            synchronized (this)
+            {
+                if (scale == requestedScale)
+                {
+                    rebuildQueued = false;
+                    break;
+                }
+                scale = requestedScale;
+            }
+        }
+        SwingUtilities.invokeLater(onRebuilt);
+    }
+
+    private static synchronized ExecutorService getRebuildExecutor()
+    {
+        if (rebuildExecutor == null)
+            rebuildExecutor = Executors.newSingleThreadExecutor(runnable ->
+            {
+                Thread thread = new Thread(runnable, "BlackBox board cache");
+                thread.setDaemon(true);
+                return thread;
+            });
+        return rebuildExecutor;
+    }
+
+    private BufferedImage render(double scale)
+    {
+        // one extra pixel for the outlines along the right and bottom edges.
+        int pixels = (int) Math.ceil((size + 1) * scale) + 1;
+        BufferedImage image = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_ARGB);
+
+        Graphics2D imageGraphics = image.createGraphics();
+        imageGraphics.scale(scale, scale);
+        imageGraphics.translate(-left, -top);
+        drawCells(imageGraphics);
+        imageGraphics.dispose();
+        return image;
+    }
+
+    private void drawCells(Graphics2D g)
+    {
+        for (BlackBoxCell[] row : grid)
+            for (BlackBoxCell cell : row)
+                if (cell != null)
+                    cell.drawBackground(g);
+    }
+
+    /**
+     * @return the scale the cached picture was last drawn at, or 0 if it hasn't been drawn yet.
+     */
+    public double getImageScale()
+    {
+        Picture current = picture;
+        return (current == null) ? 0 : current.scale;
+    }
+
+    /**
+     * a finished picture and the scale it was drawn at, kept together so that they are always swapped in as a pair.
+     */
+    private static class Picture
+    {
+        final BufferedImage image;
+        final double scale;
+
+        Picture(BufferedImage image, double scale)
+        {
+            this.image = image;
+            this.scale = scale;
+        }
+    }
+}
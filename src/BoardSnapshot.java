@@ -0,0 +1,117 @@
+import java.util.Arrays;
+
+/**
+ * Everything the player can see on the board at one moment - the status and label of every EdgeBox, which
+ * MysteryBoxes are pencilled in, the number of shots and the next label - kept in a few small arrays so that it can
+ * be copied quickly. Edges and cells are numbered as in LayoutSpace.
+ */
+public class BoardSnapshot
+{
+    private final LayoutSpace space;
+    private final byte[] edgeStatus;
+    private final char[] edgeLabel;
+    private final long[] pencilled;
+    private int numShots;
+    private char latestLabel;
+
+    /**
+     * creates the snapshot of a freshly reset board.
+     */
+    public BoardSnapshot(LayoutSpace space)
+    {
+        this.space = space;
+        edgeStatus = new byte[space.getNumEdges()];
+        edgeLabel = new char[space.getNumEdges()];
+        pencilled = space.newLayout();
+        latestLabel = 'A';
+    }
+
+    public void copyFrom(BoardSnapshot other)
+    {
+        System.arraycopy(other.edgeStatus, 0, edgeStatus, 0, edgeStatus.length);
+        System.arraycopy(other.edgeLabel, 0, edgeLabel, 0, edgeLabel.length);
+        System.arraycopy(other.pencilled, 0, pencilled, 0, pencilled.length);
+        numShots = other.numShots;
+        latestLabel = other.latestLabel;
+    }
+
+    /**
+     * updates the snapshot for a shot, following the same rules as BlackBoxPanel.processShot(): a shot from an EdgeBox
+     * that is already marked doesn't count.
+     * @param entryEdge - the edge number the shot was fired from
+     * @param exitEdge - where it came out, or ShotTracer.HIT
+     */
+    public void applyShot(int entryEdge, int exitEdge)
+    {
+        if (edgeStatus[entryEdge] != BlackBoxCell.STATUS_BLANK)
+            return;
+        numShots++;
+        if (exitEdge == ShotTracer.HIT)
+            edgeStatus[entryEdge] = EdgeBox.STATUS_HIT;
+        else if (exitEdge == entryEdge)
+            edgeStatus[entryEdge] = EdgeBox.STATUS_REFLECT;
+        else
+        {
+            edgeStatus[entryEdge] = EdgeBox.STATUS_LABEL;
+            edgeLabel[entryEdge] = latestLabel;
+            edgeStatus[exitEdge] = EdgeBox.STATUS_LABEL;
+            edgeLabel[exitEdge] = latestLabel;
+            latestLabel++;
+        }
+    }
+
+    public void setPencilled(int cellIndex, boolean isPencilled)
+    {
+        if (isPencilled)
+            pencilled[cellIndex >>> 6] |= 1L << cellIndex;
+        else
+            pencilled[cellIndex >>> 6] &= ~(1L << cellIndex);
+    }
+
+    public LayoutSpace getLayoutSpace()
+    {
+        return space;
+    }
+
+    /**
+     * @return one of BlackBoxCell.STATUS_BLANK or EdgeBox's STATUS_ constants.
+     */
+    public int getEdgeStatus(int edge)
+    {
+        return edgeStatus[edge];
+    }
+
+    /**
+     * @return the label on this edge; only meaningful if its status is EdgeBox.STATUS_LABEL.
+     */
+    public char getEdgeLabel(int edge)
+    {
+        return edgeLabel[edge];
+    }
+
+    public boolean isPencilled(int cellIndex)
+    {
+        return LayoutSpace.hasBall(pencilled, cellIndex);
+    }
+
+    public int getNumShots()
+    {
+        return numShots;
+    }
+
+    public char getLatestLabel()
+    {
+        return latestLabel;
+    }
+
+    /**
+     * @return whether the two snapshots show exactly the same board.
+     */
+    public boolean sameAs(BoardSnapshot other)
+    {
+        return Arrays.equals(edgeStatus, other.edgeStatus) &&
+               Arrays.equals(edgeLabel, other.edgeLabel) &&
+               Arrays.equals(pencilled, other.pencilled) &&
+               numShots == other.numShots && latestLabel == other.latestLabel;
+    }
+}
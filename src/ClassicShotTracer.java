@@ -0,0 +1,125 @@
+/**
+ * A ShotTracer that follows the same rules as BlackBoxPanel.findExitPoint(): a ball directly ahead is a hit, a ball
+ * ahead and to the right turns the shot left, and a ball ahead and to the left turns it right. Unlike findExitPoint(),
+ * it works on a bit set of balls, makes no debug marks and allocates nothing, so it is safe to call millions of times
+ * from several threads at once.
+ */
+public final class ClassicShotTracer implements ShotTracer
+{
+    //                                           RGT DWN LFT UP
+    private static final int[] DELTA_ROW    = {  0,  1,  0, -1};
+    private static final int[] DELTA_COLUMN = {  1,  0, -1,  0};
+
+    private final LayoutSpace space;
+    private final int gridSize;
+
+    public ClassicShotTracer(LayoutSpace space)
+    {
+        this.space = space;
+        gridSize = space.getGridSize();
+    }
+
+    @Override
+    public LayoutSpace getLayoutSpace()
+    {
+        return space;
+    }
+
+    @Override
+    public int trace(long[] layout, int entryEdge)
+    {
+        int r = space.edgeRow(entryEdge);
+        int c = space.edgeColumn(entryEdge);
+        int d = space.edgeDirection(entryEdge);
+
+        while (true)
+        {
+            int frontR = r + DELTA_ROW[d];
+            int frontC = c + DELTA_COLUMN[d];
+            if (!isMysteryBox(frontR, frontC))
+                return space.edgeIndexOf(frontR, frontC);
+            if (hasBall(layout, frontR, frontC))
+                return HIT;
+
+            int right = (d+1)%4;
+            int left = (d+3)%4;
+            if (hasBall(layout, frontR + DELTA_ROW[right], frontC + DELTA_COLUMN[right]))
+                d = left;
+            else if (hasBall(layout, frontR + DELTA_ROW[left], frontC + DELTA_COLUMN[left]))
+                d = right;
+            else
+            {
+                r = frontR;
+                c = frontC;
+            }
+            if (!isMysteryBox(r, c))
+                return space.edgeIndexOf(r, c);
+        }
+    }
+
+    /**
+     * @return the most positions tracePath() can ever write for one shot.
+     */
+    public int getMaxPathLength()
+    {
+        // a shot can pass through each MysteryBox at most once in each direction, plus its entry and exit EdgeBoxes.
+        return 4 * space.getNumCells() + 2;
+    }
+
+    /**
+     * follows the same path as trace(), but writes down each position the shot moves through, starting with the entry
+     * EdgeBox and ending with the exit EdgeBox (or, for a hit, the last MysteryBox before the ball). Each position is
+     * stored as r * (gridSize+2) + c.
+     * @param layout - the bit set of balls (see LayoutSpace)
+     * @param entryEdge - the edge number the shot is fired from
+     * @param positionsOut - receives the positions; must hold at least getMaxPathLength() values.
+     * @return the number of positions written.
+     */
+    public int tracePath(long[] layout, int entryEdge, int[] positionsOut)
+    {
+        int stride = gridSize + 2;
+        int r = space.edgeRow(entryEdge);
+        int c = space.edgeColumn(entryEdge);
+        int d = space.edgeDirection(entryEdge);
+        int length = 0;
+        positionsOut[length++] = r * stride + c;
+
+        while (true)
+        {
+            int frontR = r + DELTA_ROW[d];
+            int frontC = c + DELTA_COLUMN[d];
+            if (!isMysteryBox(frontR, frontC))
+            {
+                positionsOut[length++] = frontR * stride + frontC;
+                return length;
+            }
+            if (hasBall(layout, frontR, frontC))
+                return length;
+
+            int right = (d+1)%4;
+            int left = (d+3)%4;
+            if (hasBall(layout, frontR + DELTA_ROW[right], frontC + DELTA_COLUMN[right]))
+                d = left;
+            else if (hasBall(layout, frontR + DELTA_ROW[left], frontC + DELTA_COLUMN[left]))
+                d = right;
+            else
+            {
+                r = frontR;
+                c = frontC;
+                positionsOut[length++] = r * stride + c;
+            }
+            if (!isMysteryBox(r, c))
+                return length;
+        }
+    }
+
+    private boolean isMysteryBox(int r, int c)
+    {
+        return r > 0 && r <= gridSize && c > 0 && c <= gridSize;
+    }
+
+    private boolean hasBall(long[] layout, int r, int c)
+    {
+        return isMysteryBox(r, c) && LayoutSpace.hasBall(layout, (r-1) * gridSize + (c-1));
+    }
+}
@@ -11,27 +11,45 @@ public class EdgeBox implements BlackBoxCell
     private String myLabel;
     private int xPos, yPos;
 
-    private static Font edgeFont;
+    private static volatile Font edgeFont;
 
 
     public EdgeBox(int x, int y)
     {
-        if (edgeFont == null)
-        {
-            edgeFont = new Font("Arial",Font.BOLD, CELL_SIZE-5);
-        }
         xPos = x;
         yPos = y;
     }
 
+    /**
+     * @return the font for the labels, creating it the first time it is needed. The panel calls this ahead of time
+     *         (possibly on a background thread), so that the first label drawn doesn't have to wait for it.
+     */
+    public static Font getEdgeFont()
+    {
+        if (edgeFont == null)
+            edgeFont = new Font("Arial",Font.BOLD, CELL_SIZE-5);
+        return edgeFont;
+    }
+
     @Override
     public void drawSelf(Graphics g)
+    {
+        drawBackground(g);
+        drawContents(g);
+    }
+
+    @Override
+    public void drawBackground(Graphics g)
     {
         g.setColor(Color.GRAY);
         g.fillRect(xPos, yPos, CELL_SIZE, CELL_SIZE);
         g.setColor(Color.WHITE);
         g.drawRect(xPos, yPos, CELL_SIZE, CELL_SIZE);
+    }
 
+    @Override
+    public void drawContents(Graphics g)
+    {
         if (getStatus()==STATUS_HIT)
         {
             g.setColor(Color.RED);
@@ -45,7 +63,7 @@ public class EdgeBox implements BlackBoxCell
         else if (getStatus() == STATUS_LABEL)
         {
 
-            g.setFont(edgeFont);
+            g.setFont(getEdgeFont());
             int width = g.getFontMetrics().stringWidth(myLabel);
             g.setColor(Color.WHITE);
             g.drawString(myLabel,xPos+CELL_SIZE/2-width/2+1, yPos+CELL_SIZE-4);
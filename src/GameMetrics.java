@@ -0,0 +1,231 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Lightweight timing of the game's hot paths - shot tracing, painting, sound and resetting - so that a slow-down in
+ * the field shows up without attaching a profiler, plus how long the game takes to start up (see markStartupBegan()).
+ * The numbers can be read through JMX (e.g., with jconsole, under "BlackBox") or appended to a file every so often.
+ *
+ * Recording can be switched off at any time (through JMX, or with -Dblackbox.metrics=false), in which case the timing
+ * calls cost a single volatile read.
+ *
+ * Typical use:
+ *      long startTime = GameMetrics.startTimer();
+ *      ... do the work ...
+ *      GameMetrics.stopTimer(GameMetrics.PAINT_TIME, startTime);
+ */
+public class GameMetrics implements GameMetricsMBean
+{
+    public static final LatencyHistogram TRACE_TIME = new LatencyHistogram("findExitPoint.nanos");
+    public static final LatencyHistogram TRACE_STEPS = new LatencyHistogram("findExitPoint.steps");
+    public static final LatencyHistogram PAINT_TIME = new LatencyHistogram("paintComponent.nanos");
+    public static final LatencyHistogram SOUND_DISPATCH_TIME = new LatencyHistogram("playSound.nanos");
+    public static final LatencyHistogram RESET_TIME = new LatencyHistogram("reset.nanos");
+    // one value each per run: how long after the process was launched the board first appeared, and when it was
+    //  fully ready to play (sounds and fonts loaded).
+    public static final LatencyHistogram TIME_TO_FIRST_FRAME = new LatencyHistogram("startup.firstFrame.nanos");
+    public static final LatencyHistogram TIME_TO_INTERACTIVE = new LatencyHistogram("startup.interactive.nanos");
+
+    private static final LatencyHistogram[] ALL_HISTOGRAMS = {TRACE_TIME, TRACE_STEPS, PAINT_TIME,
+                                                              SOUND_DISPATCH_TIME, RESET_TIME,
+                                                              TIME_TO_FIRST_FRAME, TIME_TO_INTERACTIVE};
+
+    private static final GameMetrics INSTANCE = new GameMetrics();
+
+    private static volatile boolean enabled = Boolean.parseBoolean(System.getProperty("blackbox.metrics", "true"));
+    private static ScheduledExecutorService dumpExecutor;
+
+    // the System.nanoTime() at which the process was launched, or 0 if markStartupBegan() hasn't been called.
+    private static volatile long startupOrigin;
+    private static final AtomicBoolean firstFrameRecorded = new AtomicBoolean();
+    private static final AtomicBoolean interactiveRecorded = new AtomicBoolean();
+
+    private GameMetrics()
+    {
+    }
+
+    public static GameMetrics getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the current time in nanoseconds if recording is on, or 0 if it is off.
+     */
+    public static long startTimer()
+    {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * records the time since startTimer() in the given histogram - unless recording was off when the timer started.
+     * @param histogram - where to record the time
+     * @param startTime - the value startTimer() returned
+     */
+    public static void stopTimer(LatencyHistogram histogram, long startTime)
+    {
+        if (startTime != 0)
+            histogram.record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * records a value (not a time) in the given histogram, if recording is on.
+     */
+    public static void recordValue(LatencyHistogram histogram, long value)
+    {
+        if (enabled)
+            histogram.record(value);
+    }
+
+    /**
+     * starts the clock for TIME_TO_FIRST_FRAME and TIME_TO_INTERACTIVE. The clock is set back to when the operating
+     * system launched the process (if it will tell us), so that the time the JVM takes to start up is counted too.
+     * Call this first thing in main().
+     */
+    public static void markStartupBegan()
+    {
+        long now = System.nanoTime();
+        long launchedMillisAgo = ProcessHandle.current().info().startInstant()
+                                              .map(launch -> System.currentTimeMillis() - launch.toEpochMilli())
+                                              .orElse(0L);
+        startupOrigin = now - Math.max(0, launchedMillisAgo) * 1_000_000;
+    }
+
+    /**
+     * records TIME_TO_FIRST_FRAME, the first time it is called after markStartupBegan().
+     */
+    public static void markFirstFrame()
+    {
+        markStartupMilestone(TIME_TO_FIRST_FRAME, firstFrameRecorded);
+    }
+
+    /**
+     * records TIME_TO_INTERACTIVE, the first time it is called after markStartupBegan().
+     */
+    public static void markInteractive()
+    {
+        markStartupMilestone(TIME_TO_INTERACTIVE, interactiveRecorded);
+    }
+
+    private static void markStartupMilestone(LatencyHistogram histogram, AtomicBoolean recorded)
+    {
+        long origin = startupOrigin;
+        if (origin != 0 && recorded.compareAndSet(false, true))
+            recordValue(histogram, System.nanoTime() - origin);
+    }
+
+    /**
+     * stops the startup clock and forgets the startup milestones, as though the game had not yet started - for tests.
+     */
+    static void resetStartupMilestones()
+    {
+        startupOrigin = 0;
+        firstFrameRecorded.set(false);
+        interactiveRecorded.set(false);
+        TIME_TO_FIRST_FRAME.reset();
+        TIME_TO_INTERACTIVE.reset();
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled)
+    {
+        GameMetrics.enabled = enabled;
+    }
+
+    @Override
+    public void resetAll()
+    {
+        for (LatencyHistogram histogram : ALL_HISTOGRAMS)
+            histogram.reset();
+    }
+
+    @Override
+    public String getSummary()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (LatencyHistogram histogram : ALL_HISTOGRAMS)
+            sb.append(histogram).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * registers GameMetrics and each of its histograms with the platform MBean server, so they show up in jconsole
+     * and other JMX clients. It is safe to call this more than once.
+     */
+    public static synchronized void registerMBeans()
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName metricsName = new ObjectName("BlackBox:type=GameMetrics");
+            if (server.isRegistered(metricsName))
+                return;
+            server.registerMBean(INSTANCE, metricsName);
+            for (LatencyHistogram histogram : ALL_HISTOGRAMS)
+                server.registerMBean(histogram, new ObjectName("BlackBox:type=LatencyHistogram,name="+histogram.getName()));
+        }
+        catch (JMException jmExp)
+        {
+            System.out.println("Error registering metrics with JMX: "+jmExp);
+        }
+    }
+
+    /**
+     * starts a background thread that appends getSummary() to the given file every periodSeconds seconds.
+     * @param fileName - the file to append to
+     * @param periodSeconds - how often to write
+     */
+    public static synchronized void startPeriodicDump(String fileName, long periodSeconds)
+    {
+        stopPeriodicDump();
+        dumpExecutor = Executors.newSingleThreadScheduledExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "BlackBox metrics dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpExecutor.scheduleAtFixedRate(() -> dumpTo(fileName), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    public static synchronized void stopPeriodicDump()
+    {
+        if (dumpExecutor != null)
+        {
+            dumpExecutor.shutdownNow();
+            dumpExecutor = null;
+        }
+    }
+
+    /**
+     * appends a time-stamped copy of getSummary() to the given file.
+     * @param fileName - the file to append to
+     */
+    public static void dumpTo(String fileName)
+    {
+        try (PrintWriter out = new PrintWriter(new FileWriter(fileName, true)))
+        {
+            out.println("# "+new Date());
+            out.print(INSTANCE.getSummary());
+        }
+        catch (IOException ioExp)
+        {
+            System.out.println("Error writing metrics file: "+fileName);
+        }
+    }
+}
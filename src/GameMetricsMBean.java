@@ -0,0 +1,16 @@
+/**
+ * The JMX controls for GameMetrics. The individual histograms are registered as their own LatencyHistogram MBeans.
+ */
+public interface GameMetricsMBean
+{
+    public boolean isEnabled();
+
+    public void setEnabled(boolean enabled);
+
+    public void resetAll();
+
+    /**
+     * @return a multi-line summary of every histogram.
+     */
+    public String getSummary();
+}
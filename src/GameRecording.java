@@ -0,0 +1,90 @@
+import java.util.Arrays;
+
+/**
+ * A record of one game: the layout of the balls, and every shot and pencil mark the player made, in order. Each event
+ * is packed into a single int, so even very long games take little memory. See ReplayTimeline for playing one back.
+ */
+public class GameRecording
+{
+    public static final int EVENT_SHOT = 0;
+    public static final int EVENT_PENCIL_SET = 1;
+    public static final int EVENT_PENCIL_CLEAR = 2;
+
+    private final LayoutSpace space;
+    private final long[] layout;
+    private int[] events;
+    private int numEvents;
+
+    /**
+     * @param space - the size of the grid
+     * @param layout - the balls for this game (copied)
+     */
+    public GameRecording(LayoutSpace space, long[] layout)
+    {
+        this.space = space;
+        this.layout = layout.clone();
+        events = new int[64];
+    }
+
+    public LayoutSpace getLayoutSpace()
+    {
+        return space;
+    }
+
+    /**
+     * @return a copy of the balls for this game.
+     */
+    public long[] getLayout()
+    {
+        return layout.clone();
+    }
+
+    /**
+     * records a shot fired from the EdgeBox at (r, c) - whether or not it counted.
+     */
+    public void addShot(int r, int c)
+    {
+        addEvent(EVENT_SHOT, r, c);
+    }
+
+    /**
+     * records a click on the MysteryBox at (r, c), by what it left behind - a click doesn't always simply toggle the
+     * pencil mark (e.g., clicking a debug mark clears it).
+     * @param pencilled - whether the MysteryBox was pencilled in after the click
+     */
+    public void addPencilChange(int r, int c, boolean pencilled)
+    {
+        addEvent(pencilled ? EVENT_PENCIL_SET : EVENT_PENCIL_CLEAR, r, c);
+    }
+
+    private void addEvent(int type, int r, int c)
+    {
+        if (numEvents == events.length)
+            events = Arrays.copyOf(events, events.length * 2);
+        events[numEvents++] = (type << 16) | (r << 8) | c;
+    }
+
+    public int size()
+    {
+        return numEvents;
+    }
+
+    /**
+     * @param i - the event number, from 0 to size()-1
+     * @return EVENT_SHOT, EVENT_PENCIL_SET or EVENT_PENCIL_CLEAR
+     */
+    public int getEventType(int i)
+    {
+        return events[i] >>> 16;
+    }
+
+    public int getEventRow(int i)
+    {
+        return (events[i] >>> 8) & 0xFF;
+    }
+
+    public int getEventColumn(int i)
+    {
+        return events[i] & 0xFF;
+    }
+}
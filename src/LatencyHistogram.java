@@ -0,0 +1,123 @@
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how many recorded values fall into each power-of-two bucket (0, 1, 2-3, 4-7, 8-15...). Every bucket is a
+ * LongAdder, which spreads its count over several cells when threads collide, so record() never blocks and - once
+ * the adders have warmed up - never allocates.
+ */
+public class LatencyHistogram implements LatencyHistogramMBean
+{
+    private static final int NUM_BUCKETS = 64;
+
+    private final String name;
+    private final LongAdder[] buckets;
+    private final LongAdder count;
+    private final DoubleAdder sum;     // a double, so that a few huge values can't overflow it.
+    private final LongAccumulator max;
+
+    public LatencyHistogram(String name)
+    {
+        this.name = name;
+        buckets = new LongAdder[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; i++)
+            buckets[i] = new LongAdder();
+        count = new LongAdder();
+        sum = new DoubleAdder();
+        max = new LongAccumulator(Math::max, 0);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * adds one value to the histogram.
+     * @param value - the value to record; negative values are counted as zero.
+     */
+    public void record(long value)
+    {
+        if (value < 0)
+            value = 0;
+        buckets[NUM_BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    @Override
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    @Override
+    public double getMean()
+    {
+        long n = count.sum();
+        return (n == 0) ? 0 : sum.sum() / n;
+    }
+
+    @Override
+    public long getMax()
+    {
+        return max.get();
+    }
+
+    @Override
+    public long getP50()
+    {
+        return getPercentile(0.50);
+    }
+
+    @Override
+    public long getP99()
+    {
+        return getPercentile(0.99);
+    }
+
+    /**
+     * @param fraction - which percentile, from 0 to 1 (e.g., 0.99 for the 99th percentile); 0 means the smallest value
+     *                 recorded and 1 the largest.
+     * @return the upper limit of the bucket that holds this percentile (but no more than the largest value recorded),
+     *         or 0 if nothing has been recorded.
+     */
+    public long getPercentile(double fraction)
+    {
+        long n = count.sum();
+        if (n == 0)
+            return 0;
+        // the target-th smallest value, counting from 1.
+        long target = Math.max(1, Math.min(n, (long) Math.ceil(fraction * n)));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++)
+        {
+            seen += buckets[i].sum();
+            if (seen >= target)
+                return (i == 0) ? 0 : Math.min((1L << i) - 1, max.get());
+        }
+        return max.get();
+    }
+
+    @Override
+    public void reset()
+    {
+        for (LongAdder bucket : buckets)
+            bucket.reset();
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * @return a one-line summary, such as "paintComponent count=12 mean=1520.5 p50=2047 p99=4095 max=3310"
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("%s count=%d mean=%.1f p50=%d p99=%d max=%d", name, getCount(), getMean(), getP50(),
+                             getP99(), getMax());
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * The JMX view of a LatencyHistogram. Values are in the histogram's own unit (usually nanoseconds); the percentiles
+ * are approximate - they are the upper limit of the power-of-two bucket that the percentile falls in.
+ */
+public interface LatencyHistogramMBean
+{
+    public long getCount();
+
+    public double getMean();
+
+    public long getMax();
+
+    public long getP50();
+
+    public long getP99();
+
+    public void reset();
+}
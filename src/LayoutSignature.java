@@ -0,0 +1,73 @@
+/**
+ * A layout's "signature" is the list of results of firing a shot from every EdgeBox. Two layouts with the same
+ * signature can never be told apart by the player, no matter which shots they take.
+ *
+ * Rather than keep the whole list, we boil it down to a 64-bit fingerprint. Two different signatures could, in
+ * principle, share a fingerprint, and nothing downstream would notice: the two layouts would look ambiguous, and the
+ * game would refuse to deal them. With n layouts, about n^2/2^65 such pairs are expected - around one in a million
+ * for 8x8 with 5 balls, but a thousand or so for 10x10 with 8. So the jobs that group layouts by fingerprint only
+ * take spaces of up to MAX_LAYOUTS layouts (see checkSpaceSize()), where the odds of even one are a few percent.
+ */
+public class LayoutSignature
+{
+    // 2^30 layouts - enough for 8x8 with 7 balls.
+    public static final long MAX_LAYOUTS = 1L << 30;
+
+    /**
+     * makes sure that the fingerprints of the given layouts are (very nearly) certain to be unique per signature.
+     * @param space - the layouts about to be grouped by fingerprint
+     * @throws IllegalArgumentException if the space has more than MAX_LAYOUTS layouts.
+     */
+    public static void checkSpaceSize(LayoutSpace space)
+    {
+        if (space.size() > MAX_LAYOUTS)
+            throw new IllegalArgumentException("A "+space.getGridSize()+"x"+space.getGridSize()+" grid with "+
+                                               space.getNumBalls()+" balls has "+space.size()+" layouts; over "+
+                                               MAX_LAYOUTS+", 64-bit fingerprints would be likely to collide.");
+    }
+
+    /**
+     * fires every possible shot into the layout and returns the fingerprint of the results.
+     * @param tracer - the tracer to use
+     * @param layout - the bit set of balls (unchanged)
+     * @return a 64-bit fingerprint of the layout's signature.
+     */
+    public static long fingerprint(ShotTracer tracer, long[] layout)
+    {
+        int numEdges = tracer.getLayoutSpace().getNumEdges();
+        long h = numEdges;
+        for (int edge = 0; edge < numEdges; edge++)
+            h = combine(h, tracer.trace(layout, edge));
+        return finish(h);
+    }
+
+    /**
+     * finds the fingerprint of a signature whose results have already been worked out.
+     * @param results - the exit edge (or ShotTracer.HIT) for each entry edge, in edge order
+     * @return the same value fingerprint(tracer, layout) would give for that layout.
+     */
+    public static long fingerprint(int[] results)
+    {
+        long h = results.length;
+        for (int edge = 0; edge < results.length; edge++)
+            h = combine(h, results[edge]);
+        return finish(h);
+    }
+
+    private static long combine(long h, int result)
+    {
+        h = (h + result + 1) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static long finish(long h)
+    {
+        // the "fmix64" step of MurmurHash3, so that every result affects every bit of the fingerprint.
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Describes every possible arrangement of balls in a square grid of MysteryBoxes, and the geometry of the EdgeBoxes
+ * around it. Layouts are stored as bit sets (an array of longs), where the bit for the MysteryBox at (r, c) is
+ * (r-1)*gridSize + (c-1). Each layout also has a "rank" - its position in the list of all layouts, so that we can
+ * step through every layout without storing them all.
+ *
+ * The EdgeBoxes are numbered clockwise from the top-left:
+ *      0 ... n-1   : the top edge, left to right (shots move down)
+ *      n ... 2n-1  : the right edge, top to bottom (shots move left)
+ *      2n ... 3n-1 : the bottom edge, right to left (shots move up)
+ *      3n ... 4n-1 : the left edge, bottom to top (shots move right)
+ */
+public class LayoutSpace
+{
+    private final int gridSize;
+    private final int numBalls;
+    private final int numCells;
+    private final long[][] binomials;
+
+    public LayoutSpace(int gridSize, int numBalls)
+    {
+        if (gridSize < 1 || numBalls < 0 || numBalls > gridSize * gridSize)
+            throw new IllegalArgumentException("Can't fit "+numBalls+" balls in a "+gridSize+"x"+gridSize+" grid.");
+        this.gridSize = gridSize;
+        this.numBalls = numBalls;
+        numCells = gridSize * gridSize;
+
+        // Pascal's triangle, so that binomials[n][k] = "n choose k."
+        binomials = new long[numCells+1][numBalls+1];
+        for (int n = 0; n <= numCells; n++)
+        {
+            binomials[n][0] = 1;
+            for (int k = 1; k <= Math.min(n, numBalls); k++)
+                binomials[n][k] = Math.addExact(binomials[n-1][k-1], (k <= n-1) ? binomials[n-1][k] : 0);
+        }
+    }
+
+    public int getGridSize()
+    {
+        return gridSize;
+    }
+
+    public int getNumBalls()
+    {
+        return numBalls;
+    }
+
+    public int getNumCells()
+    {
+        return numCells;
+    }
+
+    /**
+     * @return the number of EdgeBoxes around the grid - i.e., the number of different shots one can take.
+     */
+    public int getNumEdges()
+    {
+        return 4 * gridSize;
+    }
+
+    /**
+     * @return how many longs are needed to hold a layout's bit set.
+     */
+    public int getNumWords()
+    {
+        return (numCells + 63) / 64;
+    }
+
+    /**
+     * @return the total number of distinct layouts - i.e., (numCells choose numBalls).
+     */
+    public long size()
+    {
+        return binomials[numCells][numBalls];
+    }
+
+    /**
+     * @return a new, empty bit set big enough to hold a layout.
+     */
+    public long[] newLayout()
+    {
+        return new long[getNumWords()];
+    }
+
+    /**
+     * finds the bit index for the MysteryBox at (r, c).
+     * precondition: 1 <= r, c <= gridSize.
+     * @param r - row
+     * @param c - column
+     * @return the bit number for this cell.
+     */
+    public int cellIndex(int r, int c)
+    {
+        return (r-1) * gridSize + (c-1);
+    }
+
+    public static boolean hasBall(long[] layout, int cellIndex)
+    {
+        return (layout[cellIndex >>> 6] & (1L << cellIndex)) != 0;
+    }
+
+    public static void setBall(long[] layout, int cellIndex)
+    {
+        layout[cellIndex >>> 6] |= 1L << cellIndex;
+    }
+
+    /**
+     * fills "layout" with the balls of the layout that has the given rank. (This uses the "combinatorial number
+     * system" - the highest-numbered ball is placed first, at the highest cell that still leaves enough ranks for
+     * the rest.)
+     * @param rank - a number from 0 to size()-1
+     * @param layout - a bit set with at least getNumWords() longs; it is overwritten.
+     */
+    public void unrank(long rank, long[] layout)
+    {
+        if (rank < 0 || rank >= size())
+            throw new IllegalArgumentException("Rank "+rank+" is out of range.");
+        for (int w = 0; w < layout.length; w++)
+            layout[w] = 0;
+        int cell = numCells;
+        for (int k = numBalls; k > 0; k--)
+        {
+            do
+                cell--;
+            while (binomials[cell][k] > rank);
+            rank -= binomials[cell][k];
+            setBall(layout, cell);
+        }
+    }
+
+    /**
+     * the reverse of unrank() - finds the rank of the given layout.
+     * precondition: the layout has exactly getNumBalls() balls.
+     * @param layout - a bit set of balls
+     * @return the rank of this layout.
+     */
+    public long rank(long[] layout)
+    {
+        long rank = 0;
+        int k = 0;
+        for (int cell = 0; cell < numCells; cell++)
+            if (hasBall(layout, cell))
+            {
+                k++;
+                rank += binomials[cell][k];
+            }
+        return rank;
+    }
+
+    /**
+     * @param edge - an edge number, from 0 to getNumEdges()-1
+     * @return the row (in BlackBoxPanel's grid, including the border) of this EdgeBox.
+     */
+    public int edgeRow(int edge)
+    {
+        int side = edge / gridSize;
+        int i = edge % gridSize;
+        switch (side)
+        {
+            case 0: return 0;
+            case 1: return i + 1;
+            case 2: return gridSize + 1;
+            default: return gridSize - i;
+        }
+    }
+
+    /**
+     * @param edge - an edge number, from 0 to getNumEdges()-1
+     * @return the column (in BlackBoxPanel's grid, including the border) of this EdgeBox.
+     */
+    public int edgeColumn(int edge)
+    {
+        int side = edge / gridSize;
+        int i = edge % gridSize;
+        switch (side)
+        {
+            case 0: return i + 1;
+            case 1: return gridSize + 1;
+            case 2: return gridSize - i;
+            default: return 0;
+        }
+    }
+
+    /**
+     * @param edge - an edge number, from 0 to getNumEdges()-1
+     * @return the direction a shot fired from this EdgeBox initially moves - one of BlackBoxPanel's DIRECTION_ constants.
+     */
+    public int edgeDirection(int edge)
+    {
+        switch (edge / gridSize)
+        {
+            case 0: return BlackBoxPanel.DIRECTION_DOWN;
+            case 1: return BlackBoxPanel.DIRECTION_LEFT;
+            case 2: return BlackBoxPanel.DIRECTION_UP;
+            default: return BlackBoxPanel.DIRECTION_RIGHT;
+        }
+    }
+
+    /**
+     * the reverse of edgeRow() and edgeColumn().
+     * @param r - row
+     * @param c - column
+     * @return the edge number of the EdgeBox at (r, c), or -1 if (r, c) is not an EdgeBox.
+     */
+    public int edgeIndexOf(int r, int c)
+    {
+        if (r == 0 && c >= 1 && c <= gridSize)
+            return c - 1;
+        if (c == gridSize + 1 && r >= 1 && r <= gridSize)
+            return gridSize + r - 1;
+        if (r == gridSize + 1 && c >= 1 && c <= gridSize)
+            return 3 * gridSize - c;
+        if (c == 0 && r >= 1 && r <= gridSize)
+            return 4 * gridSize - r;
+        return -1;
+    }
+
+    /**
+     * describes the given layout as a list of (row, column) pairs, for printing.
+     * @param layout - a bit set of balls
+     * @return a String such as "(1,1) (1,2) (3,6)"
+     */
+    public String describe(long[] layout)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int cell = 0; cell < numCells; cell++)
+            if (hasBall(layout, cell))
+            {
+                if (sb.length() > 0)
+                    sb.append(' ');
+                sb.append('(').append(cell / gridSize + 1).append(',').append(cell % gridSize + 1).append(')');
+            }
+        return sb.toString();
+    }
+}
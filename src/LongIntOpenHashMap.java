@@ -0,0 +1,177 @@
+/**
+ * A map from long keys to int values that stores everything in two primitive arrays, using open addressing with
+ * linear probing. There are no Entry objects and no boxing, so it costs 12 bytes per slot - which lets us count
+ * millions of layout signatures in a heap where a HashMap<Long, Integer> would not fit.
+ *
+ * The capacity is always a power of two, and the table grows (doubles) when it becomes more than 3/4 full.
+ */
+public class LongIntOpenHashMap
+{
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private int growThreshold;
+
+    // zero marks an empty slot in "keys," so a zero key is kept off to the side.
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    /**
+     * @param expectedSize - how many keys the map is expected to hold; the table is sized so that this many will fit
+     *                     without growing.
+     */
+    public LongIntOpenHashMap(long expectedSize)
+    {
+        long capacity = 16;
+        while (capacity * 3 / 4 < expectedSize)
+            capacity *= 2;
+        if (capacity > MAX_CAPACITY)
+            throw new IllegalArgumentException("Can't hold "+expectedSize+" keys in one table.");
+        allocate((int) capacity);
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        growThreshold = capacity / 4 * 3;
+    }
+
+    /**
+     * spreads the bits of the key so that similar keys don't end up in neighbouring slots.
+     */
+    private int slotFor(long key)
+    {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * adds delta to the value stored for key, inserting key (with a starting value of zero) if it isn't already
+     * in the map.
+     * @param key - the key to update
+     * @param delta - the amount to add
+     * @return the new value for key.
+     */
+    public int addTo(long key, int delta)
+    {
+        if (key == 0)
+        {
+            if (!hasZeroKey)
+            {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue += delta;
+            return zeroValue;
+        }
+        int slot = slotFor(key);
+        while (keys[slot] != 0)
+        {
+            if (keys[slot] == key)
+            {
+                values[slot] += delta;
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        size++;
+        if (size > growThreshold)
+            grow();
+        return delta;
+    }
+
+    /**
+     * @param key - the key to look up
+     * @return the value stored for key, or zero if it isn't in the map.
+     */
+    public int get(long key)
+    {
+        if (key == 0)
+            return hasZeroKey ? zeroValue : 0;
+        int slot = slotFor(key);
+        while (keys[slot] != 0)
+        {
+            if (keys[slot] == key)
+                return values[slot];
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    public boolean containsKey(long key)
+    {
+        if (key == 0)
+            return hasZeroKey;
+        int slot = slotFor(key);
+        while (keys[slot] != 0)
+        {
+            if (keys[slot] == key)
+                return true;
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of distinct keys in the map.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * adds every (key, value) pair of the other map into this one - used to merge counts that were made separately.
+     * @param other - the map to merge in (unchanged)
+     */
+    public void addAll(LongIntOpenHashMap other)
+    {
+        if (other.hasZeroKey)
+            addTo(0, other.zeroValue);
+        for (int slot = 0; slot < other.keys.length; slot++)
+            if (other.keys[slot] != 0)
+                addTo(other.keys[slot], other.values[slot]);
+    }
+
+    /**
+     * calls the visitor once for every (key, value) pair in the map, in no particular order.
+     */
+    public void forEach(EntryVisitor visitor)
+    {
+        if (hasZeroKey)
+            visitor.visit(0, zeroValue);
+        for (int slot = 0; slot < keys.length; slot++)
+            if (keys[slot] != 0)
+                visitor.visit(keys[slot], values[slot]);
+    }
+
+    private void grow()
+    {
+        if (keys.length >= MAX_CAPACITY)
+            throw new IllegalStateException("LongIntOpenHashMap is full.");
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != 0)
+            {
+                int slot = slotFor(oldKeys[i]);
+                while (keys[slot] != 0)
+                    slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+    }
+
+    public interface EntryVisitor
+    {
+        public void visit(long key, int value);
+    }
+}
@@ -21,13 +21,23 @@ public class MysteryBox implements BlackBoxCell
 
     @Override
     public void drawSelf(Graphics g)
+    {
+        drawBackground(g);
+        drawContents(g);
+    }
+
+    @Override
+    public void drawBackground(Graphics g)
     {
         g.setColor(Color.BLACK);
         g.fillRect(xPos, yPos, CELL_SIZE, CELL_SIZE);
         g.setColor(Color.WHITE);
         g.drawRect(xPos, yPos, CELL_SIZE, CELL_SIZE);
+    }
 
-
+    @Override
+    public void drawContents(Graphics g)
+    {
         if (getStatus()== STATUS_PENCILLED)
         {
             g.setColor(Color.YELLOW);
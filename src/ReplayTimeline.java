@@ -0,0 +1,86 @@
+/**
+ * Lets a GameRecording be viewed at any point, instantly. When the timeline is built, every shot is traced once and a
+ * BoardSnapshot "keyframe" is saved every KEYFRAME_INTERVAL events. To show the board after any number of events, we
+ * copy the nearest earlier keyframe and apply just the few events since then - so jumping anywhere in a game of
+ * thousands of events costs the same as jumping near the start.
+ */
+public class ReplayTimeline
+{
+    public static final int KEYFRAME_INTERVAL = 64;
+
+    private final GameRecording recording;
+    private final LayoutSpace space;
+    private final int numEvents;      // the recording may keep growing; the timeline covers the events it had when built.
+    private final int[] entryEdges;   // for each event: the shot's entry edge, or the cell index of a pencil change.
+    private final int[] exitEdges;    // for each shot: where it came out, or ShotTracer.HIT.
+    private final BoardSnapshot[] keyframes;
+
+    public ReplayTimeline(GameRecording recording)
+    {
+        this.recording = recording;
+        space = recording.getLayoutSpace();
+        numEvents = recording.size();
+        entryEdges = new int[numEvents];
+        exitEdges = new int[numEvents];
+
+        ShotTracer tracer = new ClassicShotTracer(space);
+        long[] layout = recording.getLayout();
+        for (int i = 0; i < numEvents; i++)
+        {
+            int r = recording.getEventRow(i);
+            int c = recording.getEventColumn(i);
+            if (recording.getEventType(i) == GameRecording.EVENT_SHOT)
+            {
+                entryEdges[i] = space.edgeIndexOf(r, c);
+                exitEdges[i] = tracer.trace(layout, entryEdges[i]);
+            }
+            else
+                entryEdges[i] = space.cellIndex(r, c);
+        }
+
+        keyframes = new BoardSnapshot[numEvents / KEYFRAME_INTERVAL + 1];
+        BoardSnapshot state = new BoardSnapshot(space);
+        for (int k = 0; k < keyframes.length; k++)
+        {
+            keyframes[k] = new BoardSnapshot(space);
+            keyframes[k].copyFrom(state);
+            applyEvents(state, k * KEYFRAME_INTERVAL, Math.min(numEvents, (k+1) * KEYFRAME_INTERVAL));
+        }
+    }
+
+    public GameRecording getRecording()
+    {
+        return recording;
+    }
+
+    /**
+     * @return the number of events on the timeline - i.e., its last position.
+     */
+    public int size()
+    {
+        return numEvents;
+    }
+
+    /**
+     * finds the state of the board after the first numEvents events.
+     * @param numEvents - from 0 (the start of the game) to size()
+     * @param snapshotOut - is overwritten with the board at that point.
+     */
+    public void stateAt(int numEvents, BoardSnapshot snapshotOut)
+    {
+        if (numEvents < 0 || numEvents > size())
+            throw new IllegalArgumentException("No event "+numEvents+" in a recording of "+size()+".");
+        int k = numEvents / KEYFRAME_INTERVAL;
+        snapshotOut.copyFrom(keyframes[k]);
+        applyEvents(snapshotOut, k * KEYFRAME_INTERVAL, numEvents);
+    }
+
+    private void applyEvents(BoardSnapshot state, int from, int to)
+    {
+        for (int i = from; i < to; i++)
+            if (recording.getEventType(i) == GameRecording.EVENT_SHOT)
+                state.applyShot(entryEdges[i], exitEdges[i]);
+            else
+                state.setPencilled(entryEdges[i], recording.getEventType(i) == GameRecording.EVENT_PENCIL_SET);
+    }
+}
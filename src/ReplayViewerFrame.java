@@ -0,0 +1,63 @@
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * A window for looking back over a recorded game. Dragging the slider shows the board as it was after any number of
+ * shots and pencil marks; the ReplayTimeline makes each jump quick enough to follow the slider as it moves.
+ */
+public class ReplayViewerFrame extends JFrame
+{
+    private BlackBoxPanel myPanel;
+    private JSlider timelineSlider;
+    private JLabel positionLabel;
+    private ReplayTimeline timeline;
+    private BoardSnapshot snapshot;
+    private long[] layout;
+
+    /**
+     * @param recording - the game to view; events added to it after this window opens aren't shown.
+     */
+    public ReplayViewerFrame(GameRecording recording)
+    {
+        super("Black Box - Replay");
+        timeline = new ReplayTimeline(recording);
+        snapshot = new BoardSnapshot(recording.getLayoutSpace());
+        layout = recording.getLayout();
+
+        setMinimumSize(new Dimension(300, 350));
+        getContentPane().setLayout(new BorderLayout());
+        myPanel = BlackBoxPanel.createViewOnly();
+        getContentPane().add(myPanel, BorderLayout.CENTER);
+        getContentPane().add(createTimelinePanel(), BorderLayout.SOUTH);
+        setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        showEvent(timeline.size());
+        pack();
+        setVisible(true);
+    }
+
+    public JPanel createTimelinePanel()
+    {
+        JPanel panel = new JPanel();
+        panel.setLayout(new BorderLayout());
+
+        timelineSlider = new JSlider(0, timeline.size(), timeline.size());
+        timelineSlider.addChangeListener(e -> showEvent(timelineSlider.getValue()));
+        panel.add(timelineSlider, BorderLayout.CENTER);
+
+        positionLabel = new JLabel();
+        panel.add(positionLabel, BorderLayout.EAST);
+
+        return panel;
+    }
+
+    /**
+     * shows the board as it was after the given number of events.
+     * @param numEvents - from 0 to the length of the recording
+     */
+    public void showEvent(int numEvents)
+    {
+        timeline.stateAt(numEvents, snapshot);
+        myPanel.showSnapshot(snapshot, layout);
+        positionLabel.setText(" "+numEvents+" / "+timeline.size()+" ");
+    }
+}
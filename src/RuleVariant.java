@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+
+/**
+ * A description of a set of rules for how shots travel through the grid, for trying out variations on the classic
+ * game. The options are:
+ *  - reflect at entry: whether a ball diagonally in front of the EdgeBox a shot is fired from sends it straight back
+ *    out (classic), or is ignored so that the shot enters the grid.
+ *  - deflection order: what happens when there are balls both front-right and front-left of the shot - classically,
+ *    the front-right one is noticed first and the shot turns left.
+ *  - absorbing cells: MysteryBoxes that swallow any shot that moves into them, as if it had hit a ball.
+ *  - portals: pairs of MysteryBoxes; a shot that moves into one of them carries on from the other, in the same
+ *    direction.
+ *
+ * A RuleVariant isn't used to trace shots directly - specialize() turns it into a ShotTracer whose tables have all of
+ * these choices built in, so that the loop that follows the shot never has to ask which rules are in force.
+ */
+public class RuleVariant
+{
+    public static final int DEFLECT_FRONT_RIGHT_FIRST = 0;
+    public static final int DEFLECT_FRONT_LEFT_FIRST = 1;
+    public static final int DEFLECT_REVERSE_IF_BOTH = 2;
+
+    private boolean reflectAtEntry;
+    private int deflectionOrder;
+    private ArrayList<int[]> absorbingCells;
+    private ArrayList<int[]> portals;
+
+    /**
+     * creates a variant with the classic rules; use the setters to change them.
+     */
+    public RuleVariant()
+    {
+        reflectAtEntry = true;
+        deflectionOrder = DEFLECT_FRONT_RIGHT_FIRST;
+        absorbingCells = new ArrayList<int[]>();
+        portals = new ArrayList<int[]>();
+    }
+
+    public boolean getReflectAtEntry()
+    {
+        return reflectAtEntry;
+    }
+
+    public void setReflectAtEntry(boolean reflect)
+    {
+        reflectAtEntry = reflect;
+    }
+
+    public int getDeflectionOrder()
+    {
+        return deflectionOrder;
+    }
+
+    /**
+     * @param order - one of DEFLECT_FRONT_RIGHT_FIRST, DEFLECT_FRONT_LEFT_FIRST or DEFLECT_REVERSE_IF_BOTH
+     */
+    public void setDeflectionOrder(int order)
+    {
+        if (order < DEFLECT_FRONT_RIGHT_FIRST || order > DEFLECT_REVERSE_IF_BOTH)
+            throw new IllegalArgumentException("Unknown deflection order: "+order);
+        deflectionOrder = order;
+    }
+
+    /**
+     * makes the MysteryBox at (r, c) swallow any shot that moves into it.
+     * @param r - row
+     * @param c - column
+     */
+    public void addAbsorbingCell(int r, int c)
+    {
+        absorbingCells.add(new int[]{r, c});
+    }
+
+    /**
+     * links the MysteryBoxes at (r1, c1) and (r2, c2), so that a shot moving into either one carries on from the other.
+     */
+    public void addPortal(int r1, int c1, int r2, int c2)
+    {
+        if (r1 == r2 && c1 == c2)
+            throw new IllegalArgumentException("A portal can't lead to itself.");
+        portals.add(new int[]{r1, c1, r2, c2});
+    }
+
+    /**
+     * @return whether these are exactly the classic rules.
+     */
+    public boolean isClassic()
+    {
+        return reflectAtEntry && deflectionOrder == DEFLECT_FRONT_RIGHT_FIRST && absorbingCells.isEmpty() &&
+               portals.isEmpty();
+    }
+
+    /**
+     * @return a copy of the (r, c) of every absorbing cell.
+     */
+    public int[][] getAbsorbingCells()
+    {
+        return absorbingCells.toArray(new int[0][]);
+    }
+
+    /**
+     * @return a copy of the (r1, c1, r2, c2) of every portal.
+     */
+    public int[][] getPortals()
+    {
+        return portals.toArray(new int[0][]);
+    }
+
+    /**
+     * builds a tracer for these rules. For the classic rules, that is a plain ClassicShotTracer, so choosing the classic
+     * variant costs nothing; otherwise it is a VariantShotTracer with the rules built into its tables. Later changes to
+     * this RuleVariant don't affect tracers that have already been built.
+     * @param space - the size of grid the tracer is for
+     * @return a tracer that follows these rules.
+     */
+    public ShotTracer specialize(LayoutSpace space)
+    {
+        if (isClassic())
+            return new ClassicShotTracer(space);
+        return new VariantShotTracer(space, this);
+    }
+}
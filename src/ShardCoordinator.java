@@ -0,0 +1,352 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Does the same job as AmbiguousLayoutDetector, but splits the layouts among several worker processes, for grids and
+ * ball counts too big for one JVM's memory. The range of ranks is cut into shards; each shard is handed to a
+ * ShardWorker process, which streams back its signature counts (sorted by fingerprint) over a pipe. The coordinator
+ * saves each shard's counts to a file in the work directory and, once every shard is done, merges the sorted files in
+ * a single pass - so neither the workers nor the coordinator ever need every signature in memory at once. (The merge
+ * trusts that equal fingerprints mean equal signatures, so the layouts are still limited to
+ * LayoutSignature.MAX_LAYOUTS.)
+ *
+ * Anything interrupted can be restarted: a worker that dies is started again and resumes from its own checkpoint,
+ * and running the coordinator again with the same work directory skips the shards that are already finished.
+ *
+ * Usage: java ShardCoordinator gridSize numBalls workDirectory [outputFile]
+ *      -Dblackbox.workers=n        how many worker processes to run at once (default: one per processor)
+ *      -Dblackbox.shards=n         how many pieces to cut the ranks into (default: 4 per worker)
+ *      -Dblackbox.workerHeap=size  the -Xmx for each worker (default: 1g)
+ */
+public class ShardCoordinator
+{
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final LayoutSpace space;
+    private final File workDirectory;
+    private final int numWorkers;
+    private final int numShards;
+    private final String workerHeap;
+
+    public ShardCoordinator(LayoutSpace space, File workDirectory, int numWorkers, int numShards, String workerHeap)
+    {
+        LayoutSignature.checkSpaceSize(space);
+        this.space = space;
+        this.workDirectory = workDirectory;
+        this.numWorkers = numWorkers;
+        this.numShards = (int) Math.max(1, Math.min(numShards, space.size()));
+        this.workerHeap = workerHeap;
+    }
+
+    public int getNumShards()
+    {
+        return numShards;
+    }
+
+    /**
+     * @return the first rank of the given shard; shard numShards "starts" at the end of the last one.
+     */
+    long shardStart(int shard)
+    {
+        return space.size() / numShards * shard + Math.min(shard, space.size() % numShards);
+    }
+
+    private File shardFile(int shard)
+    {
+        return new File(workDirectory, "shard-"+shard+".counts");
+    }
+
+    /**
+     * runs every shard that isn't finished yet, numWorkers at a time.
+     * @throws IOException if a shard still fails after MAX_ATTEMPTS tries.
+     */
+    public void runShards() throws IOException
+    {
+        if (!workDirectory.isDirectory() && !workDirectory.mkdirs())
+            throw new IOException("Can't create work directory "+workDirectory);
+
+        ExecutorService pool = Executors.newFixedThreadPool(numWorkers);
+        ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+        for (int shard = 0; shard < numShards; shard++)
+        {
+            if (isComplete(shardFile(shard), shard))
+                continue;
+            if (shardFile(shard).exists())
+                System.out.println("Shard "+shard+"'s file is from a run with different settings; running it again.");
+            int thisShard = shard;
+            results.add(pool.submit(() ->
+            {
+                runShard(thisShard);
+                return null;
+            }));
+        }
+        pool.shutdown();
+        try
+        {
+            for (Future<?> result : results)
+                result.get();
+        }
+        catch (InterruptedException iExp)
+        {
+            pool.shutdownNow();
+            throw new InterruptedIOException("Interrupted while waiting for the workers.");
+        }
+        catch (ExecutionException eExp)
+        {
+            pool.shutdownNow();
+            if (eExp.getCause() instanceof IOException)
+                throw (IOException) eExp.getCause();
+            throw new RuntimeException(eExp.getCause());
+        }
+    }
+
+    /**
+     * starts a worker process for the given shard and copies its output into the shard's file, trying again (from the
+     * worker's checkpoint) if the worker fails.
+     */
+    private void runShard(int shard) throws IOException, InterruptedException
+    {
+        long start = shardStart(shard);
+        long end = shardStart(shard + 1);
+        File checkpointFile = new File(workDirectory, "shard-"+shard+".checkpoint");
+        File tempFile = new File(workDirectory, "shard-"+shard+".counts.tmp");
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++)
+        {
+            ProcessBuilder builder = new ProcessBuilder(javaCommand(), "-Xmx"+workerHeap,
+                    "-Djava.util.concurrent.ForkJoinPool.common.parallelism="+workerParallelism(),
+                    "-cp", System.getProperty("java.class.path"), "ShardWorker",
+                    String.valueOf(space.getGridSize()), String.valueOf(space.getNumBalls()),
+                    String.valueOf(start), String.valueOf(end), checkpointFile.getPath());
+            builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            Process worker = builder.start();
+
+            boolean copied = false;
+            try (InputStream in = new BufferedInputStream(worker.getInputStream());
+                 OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile)))
+            {
+                in.transferTo(out);
+                copied = true;
+            }
+            catch (IOException ioExp)
+            {
+                System.out.println("Error reading from the worker for shard "+shard+": "+ioExp.getMessage());
+            }
+            int exitCode = worker.waitFor();
+
+            if (copied && exitCode == 0 && isComplete(tempFile, shard))
+            {
+                Files.move(tempFile.toPath(), shardFile(shard).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+                checkpointFile.delete();
+                System.out.println("Shard "+shard+" ["+start+", "+end+") done.");
+                return;
+            }
+            System.out.println("Worker for shard "+shard+" failed (exit code "+exitCode+"); attempt "+attempt+
+                               " of "+MAX_ATTEMPTS+".");
+        }
+        throw new IOException("Shard "+shard+" failed "+MAX_ATTEMPTS+" times.");
+    }
+
+    /**
+     * @return whether the file holds all the counts for exactly this shard - for this grid size, number of balls and
+     *         range of ranks, so that a file left over from a run with different settings doesn't count.
+     */
+    private boolean isComplete(File countsFile, int shard)
+    {
+        if (!countsFile.exists())
+            return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(countsFile))))
+        {
+            if (!ShardWorker.readShardHeader(in, space, shardStart(shard), shardStart(shard + 1)))
+                return false;
+            ShardWorker.skipEntries(in);
+            return true;
+        }
+        catch (IOException ioExp)
+        {
+            return false;
+        }
+    }
+
+    private int workerParallelism()
+    {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() / numWorkers);
+    }
+
+    private static String javaCommand()
+    {
+        return ProcessHandle.current().info().command()
+                            .orElse(System.getProperty("java.home")+File.separator+"bin"+File.separator+"java");
+    }
+
+    /**
+     * merges the sorted counts of every shard, adding up the counts for each fingerprint as it goes.
+     * @return the fingerprints whose total count is more than one.
+     */
+    public AmbiguousLayoutSet mergeShards() throws IOException
+    {
+        PriorityQueue<ShardCursor> queue = new PriorityQueue<ShardCursor>();
+        try
+        {
+            for (int shard = 0; shard < numShards; shard++)
+            {
+                ShardCursor cursor = new ShardCursor(shardFile(shard), space, shardStart(shard), shardStart(shard + 1));
+                if (cursor.advance())
+                    queue.add(cursor);
+                else
+                    cursor.close();
+            }
+
+            LongArrayBuilder ambiguous = new LongArrayBuilder();
+            long numSignatures = 0;
+            long numLayoutsInClasses = 0;
+            long largestClass = 0;
+            while (!queue.isEmpty())
+            {
+                long fingerprint = queue.peek().key;
+                long count = 0;
+                while (!queue.isEmpty() && queue.peek().key == fingerprint)
+                {
+                    ShardCursor cursor = queue.poll();
+                    count += cursor.value;
+                    if (cursor.advance())
+                        queue.add(cursor);
+                    else
+                        cursor.close();
+                }
+                numSignatures++;
+                largestClass = Math.max(largestClass, count);
+                if (count > 1)
+                {
+                    ambiguous.add(fingerprint);
+                    numLayoutsInClasses += count;
+                }
+            }
+
+            System.out.println(numSignatures+" distinct signatures.");
+            System.out.println(ambiguous.size()+" signatures are shared by more than one layout, covering "+
+                               numLayoutsInClasses+" layouts; the largest group has "+largestClass+" layouts.");
+            return new AmbiguousLayoutSet(space.getGridSize(), space.getNumBalls(), ambiguous.toArray());
+        }
+        finally
+        {
+            for (ShardCursor cursor : queue)
+                cursor.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 3)
+        {
+            System.out.println("Usage: java ShardCoordinator gridSize numBalls workDirectory [outputFile]");
+            return;
+        }
+        LayoutSpace space = new LayoutSpace(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        int numWorkers = Integer.getInteger("blackbox.workers", Runtime.getRuntime().availableProcessors());
+        int numShards = Integer.getInteger("blackbox.shards", 4 * numWorkers);
+        ShardCoordinator coordinator = new ShardCoordinator(space, new File(args[2]), numWorkers, numShards,
+                                                            System.getProperty("blackbox.workerHeap", "1g"));
+
+        System.out.println("Tracing "+space.size()+" layouts in "+coordinator.numShards+" shards, with "+numWorkers+
+                           " worker processes...");
+        long startTime = System.currentTimeMillis();
+        coordinator.runShards();
+        AmbiguousLayoutSet ambiguous = coordinator.mergeShards();
+        System.out.println("Done in "+(System.currentTimeMillis() - startTime)+" ms.");
+
+        if (args.length >= 4)
+        {
+            ambiguous.save(new File(args[3]));
+            System.out.println("Saved ambiguous signatures to "+args[3]+".");
+        }
+    }
+
+    /**
+     * reads one shard's file, one (fingerprint, count) pair at a time, in fingerprint order.
+     */
+    private static class ShardCursor implements Comparable<ShardCursor>
+    {
+        private final DataInputStream in;
+        private int remaining;
+        long key;
+        int value;
+
+        ShardCursor(File file, LayoutSpace space, long startRank, long endRank) throws IOException
+        {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try
+            {
+                if (!ShardWorker.readShardHeader(in, space, startRank, endRank))
+                    throw new IOException(file+" is for a different grid size, number of balls or range of ranks.");
+                if (in.readLong() != ShardWorker.STREAM_START)
+                    throw new IOException(file+" is not a file of signature counts.");
+                remaining = in.readInt();
+            }
+            catch (IOException ioExp)
+            {
+                in.close();
+                throw ioExp;
+            }
+        }
+
+        /**
+         * @return whether there was another pair to read.
+         */
+        boolean advance() throws IOException
+        {
+            if (remaining == 0)
+                return false;
+            remaining--;
+            key = in.readLong();
+            value = in.readInt();
+            return true;
+        }
+
+        void close() throws IOException
+        {
+            in.close();
+        }
+
+        @Override
+        public int compareTo(ShardCursor other)
+        {
+            return Long.compare(key, other.key);
+        }
+    }
+
+    /**
+     * a growable list of longs, without boxing.
+     */
+    private static class LongArrayBuilder
+    {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value)
+        {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        long[] toArray()
+        {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
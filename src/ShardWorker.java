@@ -0,0 +1,252 @@
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * One worker process for ShardCoordinator. It counts the signatures of every layout with a rank in [startRank,
+ * endRank) and then writes the counts to standard output, sorted by fingerprint, so that the coordinator can merge
+ * many shards without holding them all in memory.
+ *
+ * Every BLOCK_SIZE layouts, the counts for that block are appended to a checkpoint file; if the worker is killed and
+ * started again with the same arguments, it adds up the blocks already in the checkpoint and carries on from there
+ * instead of starting over. Only each new block is written, so the checkpoints cost no more, in total, than writing
+ * the shard's counts once per block.
+ *
+ * Usage: java ShardWorker gridSize numBalls startRank endRank checkpointFile
+ */
+public class ShardWorker
+{
+    public static final long STREAM_START = 0xB1AC_B0C5_0000_0001L;
+    public static final long STREAM_END = 0xB1AC_B0C5_FFFF_FFFFL;
+    public static final long SHARD_HEADER = 0xB1AC_B0C5_5AAD_0001L;
+    private static final long BLOCK_MARKER = 0xB1AC_B0C5_B10C_0001L;
+    private static final int SHARD_HEADER_BYTES = 8 + 4 + 4 + 8 + 8;
+
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 5)
+        {
+            System.err.println("Usage: java ShardWorker gridSize numBalls startRank endRank checkpointFile");
+            System.exit(2);
+        }
+        LayoutSpace space = new LayoutSpace(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        long startRank = Long.parseLong(args[2]);
+        long endRank = Long.parseLong(args[3]);
+
+        LongIntOpenHashMap counts = countShard(space, startRank, endRank, new File(args[4]), BLOCK_SIZE);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+        writeShardHeader(out, space, startRank, endRank);
+        writeEntries(out, counts);
+        out.flush();
+    }
+
+    /**
+     * counts the signatures of every layout with a rank in [startRank, endRank), picking up from (and adding to) the
+     * checkpoint file.
+     * @param blockSize - how many layouts to count between checkpoints
+     * @return the counts for the whole range.
+     */
+    public static LongIntOpenHashMap countShard(LayoutSpace space, long startRank, long endRank, File checkpointFile,
+                                                int blockSize) throws IOException
+    {
+        LongIntOpenHashMap counts = new LongIntOpenHashMap(Math.min(endRank - startRank, blockSize));
+        long nextRank = loadCheckpoint(checkpointFile, space, startRank, endRank, counts);
+        if (nextRank > startRank)
+            System.err.println("Shard ["+startRank+", "+endRank+"): resuming at rank "+nextRank+".");
+
+        AmbiguousLayoutDetector detector = new AmbiguousLayoutDetector(space);
+        while (nextRank < endRank)
+        {
+            long blockEnd = Math.min(endRank, nextRank + blockSize);
+            LongIntOpenHashMap block = new LongIntOpenHashMap(blockEnd - nextRank);
+            detector.countSignatures(nextRank, blockEnd, block);
+            appendCheckpoint(checkpointFile, nextRank, blockEnd, block);
+            counts.addAll(block);
+            nextRank = blockEnd;
+        }
+        return counts;
+    }
+
+    /**
+     * adds up the blocks in the checkpoint file, if there is one for this shard. Otherwise - or if it is for a
+     * different shard - starts a new checkpoint file. A block that was only partly written (because the worker was
+     * killed while writing it) is cut off the end of the file.
+     * @param countsOut - the counts from the checkpoint are added to this.
+     * @return the rank to carry on counting from.
+     */
+    private static long loadCheckpoint(File checkpointFile, LayoutSpace space, long startRank, long endRank,
+                                       LongIntOpenHashMap countsOut) throws IOException
+    {
+        long nextRank = startRank;
+        long validLength = 0;
+        if (checkpointFile.exists())
+        {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile))))
+            {
+                if (readShardHeader(in, space, startRank, endRank))
+                {
+                    validLength = SHARD_HEADER_BYTES;
+                    while (true)
+                    {
+                        // each block is read completely before any of it is counted, in case it was cut short.
+                        LongIntOpenHashMap block;
+                        long blockEnd;
+                        try
+                        {
+                            if (in.readLong() != BLOCK_MARKER || in.readLong() != nextRank)
+                                break;
+                            blockEnd = in.readLong();
+                            block = readEntries(in);
+                        }
+                        catch (IOException ioExp)
+                        {
+                            break;
+                        }
+                        countsOut.addAll(block);
+                        nextRank = blockEnd;
+                        validLength += 3 * 8 + entriesBytes(block.size());
+                    }
+                }
+                else
+                    System.err.println("Checkpoint "+checkpointFile+" is for a different shard; starting over.");
+            }
+            catch (IOException ioExp)
+            {
+                System.err.println("Checkpoint "+checkpointFile+" can't be read; starting over.");
+            }
+        }
+
+        if (validLength == 0)
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(checkpointFile))))
+            {
+                writeShardHeader(out, space, startRank, endRank);
+            }
+        }
+        else
+        {
+            try (RandomAccessFile file = new RandomAccessFile(checkpointFile, "rw"))
+            {
+                file.setLength(validLength);
+            }
+        }
+        return nextRank;
+    }
+
+    /**
+     * adds one block's counts to the end of the checkpoint file, and makes sure they have reached the disk.
+     */
+    private static void appendCheckpoint(File checkpointFile, long blockStart, long blockEnd, LongIntOpenHashMap block)
+            throws IOException
+    {
+        FileOutputStream fileOut = new FileOutputStream(checkpointFile, true);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut)))
+        {
+            out.writeLong(BLOCK_MARKER);
+            out.writeLong(blockStart);
+            out.writeLong(blockEnd);
+            writeEntries(out, block);
+            out.flush();
+            fileOut.getFD().sync();
+        }
+    }
+
+    /**
+     * writes which grid size, number of balls and range of ranks a shard covers, so that its file (or checkpoint) is
+     * never mistaken for one from a run with different settings.
+     */
+    public static void writeShardHeader(DataOutputStream out, LayoutSpace space, long startRank, long endRank)
+            throws IOException
+    {
+        out.writeLong(SHARD_HEADER);
+        out.writeInt(space.getGridSize());
+        out.writeInt(space.getNumBalls());
+        out.writeLong(startRank);
+        out.writeLong(endRank);
+    }
+
+    /**
+     * reads the header written by writeShardHeader().
+     * @return whether it is for exactly the given grid size, number of balls and range of ranks.
+     * @throws IOException if the stream doesn't start with a shard header at all.
+     */
+    public static boolean readShardHeader(DataInputStream in, LayoutSpace space, long startRank, long endRank)
+            throws IOException
+    {
+        if (in.readLong() != SHARD_HEADER)
+            throw new IOException("Not a shard of signature counts.");
+        int gridSize = in.readInt();
+        int numBalls = in.readInt();
+        long start = in.readLong();
+        long end = in.readLong();
+        return gridSize == space.getGridSize() && numBalls == space.getNumBalls() && start == startRank &&
+               end == endRank;
+    }
+
+    /**
+     * writes every (fingerprint, count) pair of the map, in order of fingerprint, between the STREAM_START and
+     * STREAM_END markers.
+     */
+    public static void writeEntries(DataOutputStream out, LongIntOpenHashMap counts) throws IOException
+    {
+        long[] keys = new long[counts.size()];
+        int[] n = {0};
+        counts.forEach((key, value) -> keys[n[0]++] = key);
+        Arrays.sort(keys);
+
+        out.writeLong(STREAM_START);
+        out.writeInt(keys.length);
+        for (long key : keys)
+        {
+            out.writeLong(key);
+            out.writeInt(counts.get(key));
+        }
+        out.writeLong(STREAM_END);
+    }
+
+    /**
+     * the reverse of writeEntries().
+     * @throws IOException if the stream is cut short or doesn't have the expected markers.
+     */
+    public static LongIntOpenHashMap readEntries(DataInputStream in) throws IOException
+    {
+        if (in.readLong() != STREAM_START)
+            throw new IOException("Not a stream of signature counts.");
+        int size = in.readInt();
+        LongIntOpenHashMap counts = new LongIntOpenHashMap(size);
+        for (int i = 0; i < size; i++)
+        {
+            long key = in.readLong();
+            counts.addTo(key, in.readInt());
+        }
+        if (in.readLong() != STREAM_END)
+            throw new IOException("Stream of signature counts is incomplete.");
+        return counts;
+    }
+
+    /**
+     * @return the number of bytes writeEntries() writes for the given number of entries.
+     */
+    private static long entriesBytes(int size)
+    {
+        return 8 + 4 + size * 12L + 8;
+    }
+
+    /**
+     * reads past a stream written by writeEntries(), without keeping the entries.
+     * @return the number of entries.
+     * @throws IOException if the stream is cut short or doesn't have the expected markers.
+     */
+    public static int skipEntries(DataInputStream in) throws IOException
+    {
+        if (in.readLong() != STREAM_START)
+            throw new IOException("Not a stream of signature counts.");
+        int size = in.readInt();
+        in.skipNBytes(size * 12L);
+        if (in.readLong() != STREAM_END)
+            throw new IOException("Stream of signature counts is incomplete.");
+        return size;
+    }
+}
@@ -0,0 +1,213 @@
+import javax.swing.Timer;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * Plays the path of recent shots as a dot sliding from cell to cell across the BlackBoxPanel. A single Swing timer
+ * drives every animation in flight, so several shots fired in quick succession can all be moving at once; the mouse
+ * is never blocked. Each frame only asks the panel to repaint the small areas where a dot was and where it now is.
+ * When a dot reaches the end of its path, the shot's "arrival" is run, so that the panel can show the result then.
+ *
+ * All the storage for the paths is allocated up front, so nothing is allocated from one frame to the next.
+ */
+public class ShotAnimator implements ActionListener
+{
+    private static final int FRAME_MILLIS = 16;      // about 60 frames per second.
+    private static final int FRAMES_PER_STEP = 4;    // how long the dot takes to move one cell.
+    private static final int HOLD_FRAMES = 20;       // how long the dot stays at the end of its path.
+    private static final int MAX_ANIMATIONS = 8;
+    private static final int DOT_SIZE = BlackBoxCell.CELL_SIZE/3;
+    private static final Color DOT_COLOR = Color.CYAN;
+
+    private final BlackBoxPanel panel;
+    private final ClassicShotTracer tracer;
+    private final Timer timer;
+    private final int stride;
+    private final int leftMargin, topMargin;
+
+    // one row of each of these for each animation "slot."
+    private final int[][] paths;
+    private final int[] pathLengths;
+    private final int[] frameCounts;   // -1 means that the slot is not in use.
+    private final int[] dotX, dotY;    // where the dot was last painted.
+    private final Runnable[] arrivals; // what to do when the dot reaches the end; null once it has been done.
+
+    /**
+     * @param panel - the panel to draw on
+     * @param tracer - the tracer used to work out each shot's path
+     * @param leftMargin - the x coordinate of column 0 of the grid
+     * @param topMargin - the y coordinate of row 0 of the grid
+     */
+    public ShotAnimator(BlackBoxPanel panel, ClassicShotTracer tracer, int leftMargin, int topMargin)
+    {
+        this.panel = panel;
+        this.tracer = tracer;
+        this.leftMargin = leftMargin;
+        this.topMargin = topMargin;
+        stride = tracer.getLayoutSpace().getGridSize() + 2;
+
+        paths = new int[MAX_ANIMATIONS][tracer.getMaxPathLength()];
+        pathLengths = new int[MAX_ANIMATIONS];
+        frameCounts = new int[MAX_ANIMATIONS];
+        dotX = new int[MAX_ANIMATIONS];
+        dotY = new int[MAX_ANIMATIONS];
+        arrivals = new Runnable[MAX_ANIMATIONS];
+        for (int i = 0; i < MAX_ANIMATIONS; i++)
+            frameCounts[i] = -1;
+
+        timer = new Timer(FRAME_MILLIS, this);
+        timer.setCoalesce(true);
+    }
+
+    /**
+     * starts animating a shot. If MAX_ANIMATIONS shots are already moving, the oldest one is finished early (its
+     * arrival is run straight away) to make room.
+     * @param layout - the bit set of balls the shot is fired into
+     * @param entryEdge - the edge number the shot is fired from (see LayoutSpace)
+     * @param onArrival - run (on the Swing event thread) when the dot reaches the end of the path; may be null.
+     */
+    public void start(long[] layout, int entryEdge, Runnable onArrival)
+    {
+        int slot = 0;
+        for (int i = 0; i < MAX_ANIMATIONS; i++)
+        {
+            if (frameCounts[i] == -1)
+            {
+                slot = i;
+                break;
+            }
+            if (frameCounts[i] > frameCounts[slot])
+                slot = i;
+        }
+        if (frameCounts[slot] != -1)
+        {
+            repaintDot(slot);
+            arrive(slot);
+        }
+
+        pathLengths[slot] = tracer.tracePath(layout, entryEdge, paths[slot]);
+        frameCounts[slot] = 0;
+        arrivals[slot] = onArrival;
+        moveDot(slot);
+        repaintDot(slot);
+        if (!timer.isRunning())
+            timer.start();
+    }
+
+    /**
+     * stops all animations and removes their dots, running the arrival of any shot that hadn't got there yet.
+     */
+    public void stopAll()
+    {
+        for (int i = 0; i < MAX_ANIMATIONS; i++)
+            if (frameCounts[i] != -1)
+            {
+                repaintDot(i);
+                frameCounts[i] = -1;
+                arrive(i);
+            }
+        timer.stop();
+    }
+
+    /**
+     * stops all animations and removes their dots, without running any arrivals - e.g., because the board has been
+     * reset and their results no longer apply.
+     */
+    public void cancelAll()
+    {
+        for (int i = 0; i < MAX_ANIMATIONS; i++)
+        {
+            if (frameCounts[i] != -1)
+                repaintDot(i);
+            frameCounts[i] = -1;
+            arrivals[i] = null;
+        }
+        timer.stop();
+    }
+
+    public boolean isAnimating()
+    {
+        return timer.isRunning();
+    }
+
+    /**
+     * draws the dots of all the animations in flight; called from the panel's paintComponent().
+     * @param g - the panel's Graphics
+     */
+    public void paint(Graphics g)
+    {
+        g.setColor(DOT_COLOR);
+        for (int i = 0; i < MAX_ANIMATIONS; i++)
+            if (frameCounts[i] != -1)
+                g.fillOval(dotX[i], dotY[i], DOT_SIZE, DOT_SIZE);
+    }
+
+    /**
+     * The timer has ticked - move every dot along one frame.
+     */
+    @Override
+    public void actionPerformed(ActionEvent e)
+    {
+        boolean anyActive = false;
+        for (int i = 0; i < MAX_ANIMATIONS; i++)
+        {
+            if (frameCounts[i] == -1)
+                continue;
+            frameCounts[i]++;
+            repaintDot(i);
+            if (frameCounts[i] >= (pathLengths[i]-1) * FRAMES_PER_STEP)
+                arrive(i);
+            if (frameCounts[i] > (pathLengths[i]-1) * FRAMES_PER_STEP + HOLD_FRAMES)
+            {
+                frameCounts[i] = -1;
+                continue;
+            }
+            moveDot(i);
+            repaintDot(i);
+            anyActive = true;
+        }
+        if (!anyActive)
+            timer.stop();
+    }
+
+    /**
+     * works out where the dot of the given slot belongs for its current frame, sliding between the centers of the
+     * two cells it is moving between.
+     */
+    private void moveDot(int slot)
+    {
+        int step = frameCounts[slot] / FRAMES_PER_STEP;
+        int fraction = frameCounts[slot] % FRAMES_PER_STEP;
+        if (step >= pathLengths[slot]-1)
+        {
+            step = pathLengths[slot]-1;
+            fraction = 0;
+        }
+        int from = paths[slot][step];
+        int to = paths[slot][Math.min(step+1, pathLengths[slot]-1)];
+        int fromX = (from % stride) * BlackBoxCell.CELL_SIZE;
+        int fromY = (from / stride) * BlackBoxCell.CELL_SIZE;
+        int toX = (to % stride) * BlackBoxCell.CELL_SIZE;
+        int toY = (to / stride) * BlackBoxCell.CELL_SIZE;
+        int offset = (BlackBoxCell.CELL_SIZE - DOT_SIZE)/2;
+        dotX[slot] = leftMargin + offset + fromX + (toX - fromX) * fraction / FRAMES_PER_STEP;
+        dotY[slot] = topMargin + offset + fromY + (toY - fromY) * fraction / FRAMES_PER_STEP;
+    }
+
+    /**
+     * runs the slot's arrival, if it hasn't been run already.
+     */
+    private void arrive(int slot)
+    {
+        Runnable arrival = arrivals[slot];
+        arrivals[slot] = null;
+        if (arrival != null)
+            arrival.run();
+    }
+
+    private void repaintDot(int slot)
+    {
+        panel.repaintBoardRegion(dotX[slot], dotY[slot], DOT_SIZE+1, DOT_SIZE+1);
+    }
+}
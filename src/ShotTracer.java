@@ -0,0 +1,24 @@
+/**
+ * Something that can work out where a shot comes out of a given layout of balls, without any of the Swing or sound
+ * machinery of BlackBoxPanel. Edges are numbered as described in LayoutSpace.
+ */
+public interface ShotTracer
+{
+    /**
+     * the value trace() returns when the shot hits a ball head on.
+     */
+    final int HIT = -1;
+
+    /**
+     * fires a shot inward from the given EdgeBox.
+     * @param layout - the bit set of balls (see LayoutSpace)
+     * @param entryEdge - the edge number the shot is fired from
+     * @return the edge number where the shot exits (which is entryEdge for a reflection), or HIT.
+     */
+    public int trace(long[] layout, int entryEdge);
+
+    /**
+     * @return the LayoutSpace whose layouts and edge numbers this tracer understands.
+     */
+    public LayoutSpace getLayoutSpace();
+}
@@ -46,10 +46,12 @@ public class SoundPlayer implements LineListener
 
     public void playSound(String soundFilename)
     {
+        long startTime = GameMetrics.startTimer();
         if (!clipDictionary.containsKey(soundFilename))
             loadSound(soundFilename);
         clipDictionary.get(soundFilename).setMicrosecondPosition(0);
         clipDictionary.get(soundFilename).start();
+        GameMetrics.stopTimer(GameMetrics.SOUND_DISPATCH_TIME, startTime);
     }
 
     public void closeSound(String soundFilename)
@@ -0,0 +1,167 @@
+/**
+ * A ShotTracer for any RuleVariant. All of the variant's choices are worked out once, in the constructor, into
+ * tables indexed by "state" (= position * 4 + direction): which cells to check for a deflection, in which order, which
+ * way to turn, and where a move really ends up (after any portal). The loop in trace() is then the same handful of
+ * table lookups whatever the rules are, and there are no calls back to the RuleVariant.
+ *
+ * Build these with RuleVariant.specialize(), which uses the faster ClassicShotTracer for the classic rules.
+ */
+public final class VariantShotTracer implements ShotTracer
+{
+    //                                           RGT DWN LFT UP
+    private static final int[] DELTA_ROW    = {  0,  1,  0, -1};
+    private static final int[] DELTA_COLUMN = {  1,  0, -1,  0};
+    private static final int NONE = -1;
+
+    private final LayoutSpace space;
+    private final int stride;
+    private final int maxSteps;
+    private final boolean reverseIfBoth;
+
+    // for each state:
+    private final int[] frontEdge;        // the edge number ahead, or NONE if it is a MysteryBox.
+    private final int[] frontCell;        // the cell index ahead, or NONE.
+    private final int[] firstCell;        // the diagonal cell checked first, or NONE.
+    private final int[] firstTurn;        // how many quarter-turns clockwise if the first cell has a ball.
+    private final int[] secondCell;       // the diagonal cell checked second, or NONE.
+    private final int[] secondTurn;
+    private final int[] movePosition;     // where a move forward ends up, after any portal.
+    // for each position:
+    private final int[] positionEdge;     // the edge number, or NONE.
+    private final int[] positionCell;     // the cell index, or NONE.
+    private final boolean[] absorbing;
+
+    public VariantShotTracer(LayoutSpace space, RuleVariant variant)
+    {
+        this.space = space;
+        int gridSize = space.getGridSize();
+        stride = gridSize + 2;
+        int numPositions = stride * stride;
+        int numStates = numPositions * 4;
+        // a shot that comes back to a state it has been in before is going round in circles forever.
+        maxSteps = numStates + 1;
+        reverseIfBoth = variant.getDeflectionOrder() == RuleVariant.DEFLECT_REVERSE_IF_BOTH;
+
+        positionEdge = new int[numPositions];
+        positionCell = new int[numPositions];
+        absorbing = new boolean[numPositions];
+        int[] portalTarget = new int[numPositions];
+        for (int r = 0; r < stride; r++)
+            for (int c = 0; c < stride; c++)
+            {
+                int position = r * stride + c;
+                positionEdge[position] = space.edgeIndexOf(r, c);
+                positionCell[position] = isMysteryBox(r, c) ? space.cellIndex(r, c) : NONE;
+                portalTarget[position] = position;
+            }
+        for (int[] cell : variant.getAbsorbingCells())
+            absorbing[checkedPosition(cell[0], cell[1])] = true;
+        for (int[] portal : variant.getPortals())
+        {
+            int a = checkedPosition(portal[0], portal[1]);
+            int b = checkedPosition(portal[2], portal[3]);
+            if (portalTarget[a] != a || portalTarget[b] != b)
+                throw new IllegalArgumentException("A cell can only be part of one portal.");
+            portalTarget[a] = b;
+            portalTarget[b] = a;
+        }
+
+        frontEdge = new int[numStates];
+        frontCell = new int[numStates];
+        firstCell = new int[numStates];
+        firstTurn = new int[numStates];
+        secondCell = new int[numStates];
+        secondTurn = new int[numStates];
+        movePosition = new int[numStates];
+        boolean leftFirst = variant.getDeflectionOrder() == RuleVariant.DEFLECT_FRONT_LEFT_FIRST;
+        for (int r = 0; r < stride; r++)
+            for (int c = 0; c < stride; c++)
+                for (int d = 0; d < 4; d++)
+                {
+                    int state = (r * stride + c) * 4 + d;
+                    int frontR = r + DELTA_ROW[d];
+                    int frontC = c + DELTA_COLUMN[d];
+                    int right = (d+1)%4;
+                    int left = (d+3)%4;
+                    int rightCell = cellIndexOrNone(frontR + DELTA_ROW[right], frontC + DELTA_COLUMN[right]);
+                    int leftCell = cellIndexOrNone(frontR + DELTA_ROW[left], frontC + DELTA_COLUMN[left]);
+                    if (positionEdge[r * stride + c] != NONE && !variant.getReflectAtEntry())
+                    {
+                        rightCell = NONE;
+                        leftCell = NONE;
+                    }
+
+                    frontEdge[state] = space.edgeIndexOf(frontR, frontC);
+                    frontCell[state] = cellIndexOrNone(frontR, frontC);
+                    // a ball front-right turns the shot left (3 quarter-turns clockwise), and vice versa.
+                    firstCell[state] = leftFirst ? leftCell : rightCell;
+                    firstTurn[state] = leftFirst ? 1 : 3;
+                    secondCell[state] = leftFirst ? rightCell : leftCell;
+                    secondTurn[state] = leftFirst ? 3 : 1;
+                    movePosition[state] = isMysteryBox(frontR, frontC) ? portalTarget[frontR * stride + frontC] : NONE;
+                }
+    }
+
+    @Override
+    public LayoutSpace getLayoutSpace()
+    {
+        return space;
+    }
+
+    /**
+     * as ShotTracer.trace(), except that a shot that can never come out also counts as a HIT.
+     */
+    @Override
+    public int trace(long[] layout, int entryEdge)
+    {
+        int position = space.edgeRow(entryEdge) * stride + space.edgeColumn(entryEdge);
+        int d = space.edgeDirection(entryEdge);
+
+        for (int step = 0; step < maxSteps; step++)
+        {
+            int state = position * 4 + d;
+            if (frontEdge[state] != NONE)
+                return frontEdge[state];
+            if (LayoutSpace.hasBall(layout, frontCell[state]))
+                return HIT;
+
+            boolean first = firstCell[state] != NONE && LayoutSpace.hasBall(layout, firstCell[state]);
+            boolean second = secondCell[state] != NONE && LayoutSpace.hasBall(layout, secondCell[state]);
+            if (first && second && reverseIfBoth)
+                d = (d+2)&3;
+            else if (first)
+                d = (d+firstTurn[state])&3;
+            else if (second)
+                d = (d+secondTurn[state])&3;
+            else
+            {
+                position = movePosition[state];
+                // a portal could drop the shot right onto a ball.
+                if (absorbing[position] || LayoutSpace.hasBall(layout, positionCell[position]))
+                    return HIT;
+            }
+            if (positionEdge[position] != NONE)
+                return positionEdge[position];
+        }
+        // the shot is trapped - e.g., spinning in place in a cell with balls on all four diagonals, which the classic
+        //  rules never allow but "reflect at entry" turned off does. It never comes out, so it counts as absorbed.
+        return HIT;
+    }
+
+    private boolean isMysteryBox(int r, int c)
+    {
+        return r > 0 && r < stride-1 && c > 0 && c < stride-1;
+    }
+
+    private int cellIndexOrNone(int r, int c)
+    {
+        return isMysteryBox(r, c) ? space.cellIndex(r, c) : NONE;
+    }
+
+    private int checkedPosition(int r, int c)
+    {
+        if (!isMysteryBox(r, c))
+            throw new IllegalArgumentException("("+r+", "+c+") is not a MysteryBox.");
+        return r * stride + c;
+    }
+}
@@ -129,4 +129,187 @@ class BlackBoxPanelTest
         assertArrayEquals(new int[]{2,0},testPanel.findExitPoint(new int[]{2,0},BlackBoxPanel.DIRECTION_RIGHT));
         assertNull(testPanel.findExitPoint(new int[]{1,0},BlackBoxPanel.DIRECTION_RIGHT));
     }
-}
\ No newline at end of file
+
+    /**
+     * the headless shot tracers are only useful if they agree with the game itself - processShots(), ReplayTimeline and
+     * the ambiguous layout filter all depend on it - so fire every shot both ways, on random layouts.
+     */
+    @Test
+    void testFindExitPointMatchesShotTracer()
+    {
+        LayoutSpace space = testPanel.getRecording().getLayoutSpace();
+        ClassicShotTracer tracer = new ClassicShotTracer(space);
+        java.util.Random random = new java.util.Random(29);
+        long[] layout = space.newLayout();
+        for (int i = 0; i < 20000; i++)
+        {
+            space.unrank((long) (random.nextDouble() * space.size()), layout);
+            testPanel.setBallLayout(layout);
+            for (int edge = 0; edge < space.getNumEdges(); edge++)
+            {
+                int[] start = {space.edgeRow(edge), space.edgeColumn(edge)};
+                int[] exit = testPanel.findExitPoint(start, space.edgeDirection(edge));
+                int gameResult = (exit == null) ? ShotTracer.HIT : space.edgeIndexOf(exit[0], exit[1]);
+                if (tracer.trace(layout, edge) != gameResult)
+                    fail("ClassicShotTracer disagrees with findExitPoint() for edge "+edge+" of layout "+
+                         space.describe(layout));
+            }
+        }
+    }
+
+    @Test
+    void testProcessShots()
+    {
+        int[][] shots = {{0,1},{0,3},{0,4},{9,4},{4,9},{2,0},{7,0},{9,5},{0,8},{1,9}};
+
+        BlackBoxPanel onePanel = new BlackBoxPanel();
+        onePanel.resetWithTestData();
+        // start both boards with some pencil marks, and the debug marks of an earlier shot.
+        for (BlackBoxPanel panel : new BlackBoxPanel[]{onePanel, testPanel})
+        {
+            panel.togglePencilledStatus(5,4);
+            panel.togglePencilledStatus(2,2);
+            panel.processShot(new int[]{8,0});
+        }
+        for (int[] shot : shots)
+            onePanel.processShot(shot);
+        // processShots() doesn't leave the last shot's path marked; otherwise the boards should be identical.
+        onePanel.clear_all_debug_marks();
+
+        testPanel.processShots(shots, false);
+
+        // {9,4} is already labelled by the shot from {0,4}, so it doesn't count.
+        assertEquals(10, testPanel.getNumShots());
+        assertEquals(onePanel.getNumShots(), testPanel.getNumShots());
+        for (int r = 0; r <= 9; r++)
+            for (int c = 0; c <= 9; c++)
+                if (testPanel.isEdgeBox(r, c) || testPanel.isMysteryBox(r, c))
+                    assertEquals(onePanel.getCellStatus(r, c), testPanel.getCellStatus(r, c), "("+r+", "+c+")");
+        assertEquals(EdgeBox.STATUS_HIT, testPanel.getCellStatus(0,1));
+        assertEquals(EdgeBox.STATUS_REFLECT, testPanel.getCellStatus(0,3));
+        assertEquals(EdgeBox.STATUS_LABEL, testPanel.getCellStatus(9,4));
+        assertEquals(MysteryBox.STATUS_PENCILLED, testPanel.getCellStatus(5,4));
+    }
+
+    @Test
+    void testAnimatedShot()
+    {
+        testPanel.setAnimateShots(true);
+        testPanel.processShot(new int[]{0,4});
+        // while the dot is moving, neither the path nor the result is shown...
+        assertEquals(1, testPanel.getNumShots());
+        assertEquals(BlackBoxCell.STATUS_BLANK, testPanel.getCellStatus(0,4));
+        assertEquals(BlackBoxCell.STATUS_BLANK, testPanel.getCellStatus(9,4));
+        for (int r = 1; r <= 8; r++)
+            for (int c = 1; c <= 8; c++)
+                assertEquals(BlackBoxCell.STATUS_BLANK, testPanel.getCellStatus(r, c));
+        // ... and the shot's exit can't be fired from in the meantime.
+        testPanel.processShot(new int[]{9,4});
+        assertEquals(1, testPanel.getNumShots());
+
+        // stopping the animation shows the result straight away.
+        testPanel.setAnimateShots(false);
+        assertEquals(EdgeBox.STATUS_LABEL, testPanel.getCellStatus(0,4));
+        assertEquals(EdgeBox.STATUS_LABEL, testPanel.getCellStatus(9,4));
+
+        // a reset drops the results of shots still in flight.
+        testPanel.setAnimateShots(true);
+        testPanel.processShot(new int[]{0,3});
+        testPanel.reset();
+        testPanel.setAnimateShots(false);
+        assertEquals(BlackBoxCell.STATUS_BLANK, testPanel.getCellStatus(0,3));
+    }
+
+    @Test
+    void testViewOnlyPanel()
+    {
+        BlackBoxPanel viewOnly = BlackBoxPanel.createViewOnly();
+        viewOnly.setAnimateShots(false);
+        try
+        {
+            viewOnly.reset();
+            fail("reset a view-only panel");
+        }
+        catch (IllegalStateException isExp)
+        {
+            // expected.
+        }
+        try
+        {
+            viewOnly.setAnimateShots(true);
+            fail("animated shots on a view-only panel");
+        }
+        catch (IllegalStateException isExp)
+        {
+            // expected.
+        }
+        assertFalse(viewOnly.getAnimateShots());
+    }
+
+    @Test
+    void testReplayTimeline()
+    {
+        // pencil marks in between the shots - including some on the shots' paths, and a click on a debug mark.
+        testPanel.togglePencilledStatus(5,4);
+        testPanel.processShot(new int[]{0,4});
+        testPanel.togglePencilledStatus(3,4);     // a debug mark left by the last shot - clicking it clears it.
+        testPanel.processShot(new int[]{0,5});
+        testPanel.togglePencilledStatus(2,2);
+        int[][] shots = {{0,1},{0,3},{9,4},{4,9},{2,0},{7,0},{9,5},{0,8},{1,9}};
+        for (int[] shot : shots)
+        {
+            testPanel.processShot(shot);
+            testPanel.togglePencilledStatus(shot[0] == 0 ? 1 : 8, 5);
+        }
+        testPanel.togglePencilledStatus(2,2);
+        assertEquals(MysteryBox.STATUS_PENCILLED, testPanel.getCellStatus(5,4));
+        assertEquals(MysteryBox.STATUS_BLANK, testPanel.getCellStatus(3,4));
+
+        // the whole recording, shown on another panel, should match this one (apart from the debug marks).
+        GameRecording recording = testPanel.getRecording();
+        assertEquals(2 * shots.length + 6, recording.size());
+        ReplayTimeline timeline = new ReplayTimeline(recording);
+        BoardSnapshot snapshot = new BoardSnapshot(recording.getLayoutSpace());
+        timeline.stateAt(timeline.size(), snapshot);
+        BlackBoxPanel replayPanel = BlackBoxPanel.createViewOnly();
+        replayPanel.showSnapshot(snapshot, recording.getLayout());
+        assertEquals(testPanel.getNumShots(), replayPanel.getNumShots());
+        for (int r = 0; r <= 9; r++)
+            for (int c = 0; c <= 9; c++)
+                if (testPanel.isEdgeBox(r, c))
+                    assertEquals(testPanel.getCellStatus(r, c), replayPanel.getCellStatus(r, c));
+                else if (testPanel.isMysteryBox(r, c))
+                    assertEquals(testPanel.getCellStatus(r, c) == MysteryBox.STATUS_PENCILLED,
+                                 replayPanel.getCellStatus(r, c) == MysteryBox.STATUS_PENCILLED, "("+r+", "+c+")");
+
+        // a long game: jumping to any point from a keyframe should give the same board as replaying from the start.
+        LayoutSpace space = recording.getLayoutSpace();
+        GameRecording longGame = new GameRecording(space, testPanel.getBallLayout());
+        java.util.Random random = new java.util.Random(35);
+        for (int i = 0; i < 1000; i++)
+            if (random.nextInt(3) == 0)
+                longGame.addPencilChange(random.nextInt(8) + 1, random.nextInt(8) + 1, random.nextBoolean());
+            else
+            {
+                int edge = random.nextInt(space.getNumEdges());
+                longGame.addShot(space.edgeRow(edge), space.edgeColumn(edge));
+            }
+        timeline = new ReplayTimeline(longGame);
+        ShotTracer tracer = new ClassicShotTracer(space);
+        BoardSnapshot expected = new BoardSnapshot(space);
+        for (int i = 0; i <= longGame.size(); i++)
+        {
+            timeline.stateAt(i, snapshot);
+            assertTrue(expected.sameAs(snapshot), "board differs after "+i+" events");
+            if (i == longGame.size())
+                break;
+            int r = longGame.getEventRow(i);
+            int c = longGame.getEventColumn(i);
+            if (longGame.getEventType(i) == GameRecording.EVENT_SHOT)
+                expected.applyShot(space.edgeIndexOf(r, c), tracer.trace(longGame.getLayout(), space.edgeIndexOf(r, c)));
+            else
+                expected.setPencilled(space.cellIndex(r, c),
+                                      longGame.getEventType(i) == GameRecording.EVENT_PENCIL_SET);
+        }
+    }
+}
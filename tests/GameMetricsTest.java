@@ -0,0 +1,133 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for LatencyHistogram's buckets and percentiles, for switching GameMetrics on and off, and for its startup
+ * milestones.
+ */
+class GameMetricsTest
+{
+    @BeforeEach
+    void setUp()
+    {
+        GameMetrics.resetStartupMilestones();
+    }
+
+    @Test
+    void testBuckets()
+    {
+        // each value lands in the power-of-two bucket whose upper limit is reported as the percentile.
+        long[][] valueAndLimit = {{0, 0}, {1, 1}, {2, 3}, {3, 3}, {4, 7}, {1000, 1023}, {1024, 2047},
+                                  {(1L << 40) + 5, (1L << 41) - 1}, {Long.MAX_VALUE, Long.MAX_VALUE}};
+        for (long[] v : valueAndLimit)
+        {
+            LatencyHistogram histogram = new LatencyHistogram("test");
+            histogram.record(v[0]);
+            // another value in the same bucket pushes the max up to the top of the bucket, which then caps the result.
+            histogram.record(v[1]);
+            assertEquals(v[1], histogram.getP50());
+            assertEquals(v[1], histogram.getMax());
+        }
+
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        histogram.record(-5);
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getP99());
+    }
+
+    @Test
+    void testPercentiles()
+    {
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        assertEquals(0, histogram.getP50());
+        assertEquals(0, histogram.getPercentile(1));
+        assertEquals(0.0, histogram.getMean());
+
+        // 90 small values, 9 medium ones and one huge one.
+        for (int i = 0; i < 90; i++)
+            histogram.record(5);
+        for (int i = 0; i < 9; i++)
+            histogram.record(100);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(100, histogram.getCount());
+        assertEquals(7, histogram.getPercentile(0));
+        assertEquals(7, histogram.getP50());
+        assertEquals(7, histogram.getPercentile(0.90));
+        assertEquals(127, histogram.getPercentile(0.91));
+        assertEquals(127, histogram.getP99());
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(1));
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        // the huge value mustn't overflow the mean.
+        assertTrue(histogram.getMean() > Long.MAX_VALUE / 100.0 * 0.99);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getP99());
+        assertEquals(0.0, histogram.getMean());
+        histogram.record(3);
+        assertEquals(3, histogram.getMax());
+        assertEquals(3, histogram.getPercentile(0));
+    }
+
+    @Test
+    void testEnableAndDisable()
+    {
+        GameMetrics metrics = GameMetrics.getInstance();
+        boolean wasEnabled = metrics.isEnabled();
+        LatencyHistogram histogram = new LatencyHistogram("test");
+        try
+        {
+            metrics.setEnabled(false);
+            long startTime = GameMetrics.startTimer();
+            assertEquals(0, startTime);
+            GameMetrics.stopTimer(histogram, startTime);
+            GameMetrics.recordValue(histogram, 42);
+            assertEquals(0, histogram.getCount());
+
+            metrics.setEnabled(true);
+            startTime = GameMetrics.startTimer();
+            assertTrue(startTime != 0);
+            GameMetrics.stopTimer(histogram, startTime);
+            GameMetrics.recordValue(histogram, 42);
+            assertEquals(2, histogram.getCount());
+
+            // a timer started while recording was off stays unrecorded, even if recording is switched on meanwhile.
+            metrics.setEnabled(false);
+            startTime = GameMetrics.startTimer();
+            metrics.setEnabled(true);
+            GameMetrics.stopTimer(histogram, startTime);
+            assertEquals(2, histogram.getCount());
+        }
+        finally
+        {
+            metrics.setEnabled(wasEnabled);
+        }
+    }
+
+    @Test
+    void testStartupMilestonesAreRecordedOnce()
+    {
+        GameMetrics metrics = GameMetrics.getInstance();
+        boolean wasEnabled = metrics.isEnabled();
+        try
+        {
+            metrics.setEnabled(true);
+            // nothing is recorded until the clock has been started.
+            GameMetrics.markInteractive();
+            assertEquals(0, GameMetrics.TIME_TO_INTERACTIVE.getCount());
+
+            GameMetrics.markStartupBegan();
+            GameMetrics.markFirstFrame();
+            GameMetrics.markFirstFrame();
+            assertEquals(1, GameMetrics.TIME_TO_FIRST_FRAME.getCount());
+            assertTrue(GameMetrics.TIME_TO_FIRST_FRAME.getMax() > 0);
+        }
+        finally
+        {
+            metrics.setEnabled(wasEnabled);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the pieces of the sharded signature count that don't need worker processes: the file format, how the
+ * ranks are split up, checkpoints and the merge. Everything runs on small grids, in a temporary directory.
+ */
+class ShardCoordinatorTest
+{
+    private static final long SEED = 20221031L;
+
+    private static File newWorkDirectory() throws IOException
+    {
+        File directory = Files.createTempDirectory("blackbox-shards").toFile();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    private static DataInputStream inputFrom(ByteArrayOutputStream bytes)
+    {
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    void testEntriesRoundTrip() throws IOException
+    {
+        LayoutSpace space = new LayoutSpace(5, 3);
+        LongIntOpenHashMap counts = new LongIntOpenHashMap(1000);
+        Random random = new Random(SEED);
+        for (int i = 0; i < 1000; i++)
+            counts.addTo(random.nextLong(), random.nextInt(5) + 1);
+        counts.addTo(0L, 7);
+        counts.addTo(-1L, 3);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ShardWorker.writeShardHeader(out, space, 10, 20);
+        ShardWorker.writeEntries(out, counts);
+        out.flush();
+
+        DataInputStream in = inputFrom(bytes);
+        assertTrue(ShardWorker.readShardHeader(in, space, 10, 20));
+        LongIntOpenHashMap copy = ShardWorker.readEntries(in);
+        assertEquals(counts.size(), copy.size());
+        counts.forEach((key, value) -> assertEquals(value, copy.get(key)));
+
+        in = inputFrom(bytes);
+        assertTrue(ShardWorker.readShardHeader(in, space, 10, 20));
+        assertEquals(counts.size(), ShardWorker.skipEntries(in));
+
+        // a header for any other shard doesn't match.
+        assertFalse(ShardWorker.readShardHeader(inputFrom(bytes), space, 10, 21));
+        assertFalse(ShardWorker.readShardHeader(inputFrom(bytes), space, 0, 20));
+        assertFalse(ShardWorker.readShardHeader(inputFrom(bytes), new LayoutSpace(5, 4), 10, 20));
+        assertFalse(ShardWorker.readShardHeader(inputFrom(bytes), new LayoutSpace(6, 3), 10, 20));
+
+        // a stream that is cut short is an error, not a smaller map.
+        byte[] whole = bytes.toByteArray();
+        DataInputStream cutShort = new DataInputStream(new ByteArrayInputStream(whole, 0, whole.length - 20));
+        ShardWorker.readShardHeader(cutShort, space, 10, 20);
+        try
+        {
+            ShardWorker.readEntries(cutShort);
+            fail("read a stream that was cut short");
+        }
+        catch (IOException ioExp)
+        {
+            // expected.
+        }
+    }
+
+    @Test
+    void testShardStartPartitioning() throws IOException
+    {
+        File workDirectory = newWorkDirectory();
+        int[][] cases = {{5, 3, 1}, {5, 3, 4}, {5, 3, 7}, {8, 5, 13}, {8, 5, 1000}, {3, 2, 1000}};
+        for (int[] c : cases)
+        {
+            LayoutSpace space = new LayoutSpace(c[0], c[1]);
+            ShardCoordinator coordinator = new ShardCoordinator(space, workDirectory, 1, c[2], "1g");
+            int numShards = coordinator.getNumShards();
+            assertEquals(Math.min(c[2], space.size()), numShards);
+            assertEquals(0, coordinator.shardStart(0));
+            assertEquals(space.size(), coordinator.shardStart(numShards));
+            long smallest = Long.MAX_VALUE;
+            long largest = 0;
+            for (int shard = 0; shard < numShards; shard++)
+            {
+                long shardSize = coordinator.shardStart(shard + 1) - coordinator.shardStart(shard);
+                smallest = Math.min(smallest, shardSize);
+                largest = Math.max(largest, shardSize);
+            }
+            assertTrue(smallest >= 1, "every shard has at least one rank");
+            assertTrue(largest - smallest <= 1, "shards differ in size by at most one rank");
+        }
+
+        // 8x8 with 7 balls is as big as the 64-bit fingerprints allow; 10x10 with 8 is far too big.
+        new ShardCoordinator(new LayoutSpace(8, 7), workDirectory, 1, 4, "1g");
+        try
+        {
+            new ShardCoordinator(new LayoutSpace(10, 8), workDirectory, 1, 4, "1g");
+            fail("accepted a space whose fingerprints are likely to collide");
+        }
+        catch (IllegalArgumentException iaExp)
+        {
+            // expected.
+        }
+    }
+
+    @Test
+    void testCheckpointResume() throws IOException
+    {
+        LayoutSpace space = new LayoutSpace(5, 3);
+        long start = 100;
+        long end = space.size() - 50;
+        LongIntOpenHashMap expected = new LongIntOpenHashMap(end - start);
+        new AmbiguousLayoutDetector(space).countSignatures(start, end, expected);
+
+        File checkpointFile = new File(newWorkDirectory(), "shard.checkpoint");
+        checkpointFile.deleteOnExit();
+        assertSameCounts(expected, ShardWorker.countShard(space, start, end, checkpointFile, 300));
+
+        // as if the worker was killed part-way through writing its last block: the rest is counted again.
+        try (RandomAccessFile file = new RandomAccessFile(checkpointFile, "rw"))
+        {
+            file.setLength(file.length() - 100);
+        }
+        assertSameCounts(expected, ShardWorker.countShard(space, start, end, checkpointFile, 300));
+        // and finishing from a complete checkpoint doesn't count anything twice.
+        assertSameCounts(expected, ShardWorker.countShard(space, start, end, checkpointFile, 300));
+
+        // a checkpoint for another range is thrown away.
+        LongIntOpenHashMap other = new LongIntOpenHashMap(100);
+        new AmbiguousLayoutDetector(space).countSignatures(0, 100, other);
+        assertSameCounts(other, ShardWorker.countShard(space, 0, 100, checkpointFile, 300));
+    }
+
+    private static void assertSameCounts(LongIntOpenHashMap expected, LongIntOpenHashMap actual)
+    {
+        assertEquals(expected.size(), actual.size());
+        expected.forEach((key, value) -> assertEquals(value, actual.get(key)));
+    }
+
+    @Test
+    void testMergeShardsTotals() throws IOException
+    {
+        LayoutSpace space = new LayoutSpace(3, 2);
+        File workDirectory = newWorkDirectory();
+        ShardCoordinator coordinator = new ShardCoordinator(space, workDirectory, 1, 4, "1g");
+
+        // made-up counts with plenty of keys in more than one shard, so the merge has to add them up.
+        LongIntOpenHashMap totals = new LongIntOpenHashMap(100);
+        Random random = new Random(SEED);
+        for (int shard = 0; shard < coordinator.getNumShards(); shard++)
+        {
+            LongIntOpenHashMap counts = new LongIntOpenHashMap(50);
+            for (int i = 0; i < 30; i++)
+                counts.addTo(random.nextInt(60) - 30, 1);
+            totals.addAll(counts);
+            File shardFile = new File(workDirectory, "shard-"+shard+".counts");
+            shardFile.deleteOnExit();
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(shardFile)))
+            {
+                ShardWorker.writeShardHeader(out, space, coordinator.shardStart(shard), coordinator.shardStart(shard+1));
+                ShardWorker.writeEntries(out, counts);
+            }
+        }
+
+        AmbiguousLayoutSet ambiguous = coordinator.mergeShards();
+        int[] numAmbiguous = {0};
+        totals.forEach((key, total) ->
+        {
+            assertEquals(total > 1, ambiguous.contains(key), "fingerprint "+key+" (total "+total+")");
+            if (total > 1)
+                numAmbiguous[0]++;
+        });
+        assertEquals(numAmbiguous[0], ambiguous.size());
+
+        // with a different number of shards, the same files are for the wrong ranges, and mustn't be merged.
+        try
+        {
+            new ShardCoordinator(space, workDirectory, 1, 3, "1g").mergeShards();
+            fail("merged shards from a run with different settings");
+        }
+        catch (IOException ioExp)
+        {
+            // expected.
+        }
+    }
+}
@@ -0,0 +1,440 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the headless shot tracers. Nothing here builds a BlackBoxPanel, so these need neither a display nor a
+ * sound card (BlackBoxPanelTest checks them against the game's own findExitPoint()). The number of random layouts can
+ * be raised for a longer soak with -Dblackbox.test.layouts=...
+ */
+class ShotTracerTest
+{
+    private static final int GRID_SIZE = 8;
+    private static final int NUM_BALLS = 5;
+    private static final long SEED = 20221031L;
+    private static final int NUM_LAYOUTS = Integer.getInteger("blackbox.test.layouts", 1000000);
+
+    private LayoutSpace space;
+
+    @BeforeEach
+    void setUp()
+    {
+        space = new LayoutSpace(GRID_SIZE, NUM_BALLS);
+    }
+
+    /**
+     * every tracer implementation that should give exactly the same answers as the reference.
+     */
+    private ArrayList<ShotTracer> tracersUnderTest()
+    {
+        ArrayList<ShotTracer> tracers = new ArrayList<ShotTracer>();
+        tracers.add(new ClassicShotTracer(space));
+        // the table-driven tracer, forced to follow the classic rules.
+        tracers.add(new VariantShotTracer(space, new RuleVariant()));
+        return tracers;
+    }
+
+    /**
+     * The reference tracer: a step-by-step copy of BlackBoxPanel.findExitPoint(), working on a grid of booleans
+     * (including the border) instead of cells.
+     */
+    private int referenceTrace(boolean[][] balls, int entryEdge)
+    {
+        int[][] deltas = {{0,1},{1,0},{0,-1},{-1,0}};
+        int[] p = {space.edgeRow(entryEdge), space.edgeColumn(entryEdge)};
+        int d = space.edgeDirection(entryEdge);
+        while (true)
+        {
+            int[] front = {p[0]+deltas[d][0], p[1]+deltas[d][1]};
+            if (!isMysteryBox(front[0], front[1]))
+                return space.edgeIndexOf(front[0], front[1]);
+            if (balls[front[0]][front[1]])
+                return ShotTracer.HIT;
+            int right = (d+1)%4;
+            int left = (d+3)%4;
+            if (balls[front[0]+deltas[right][0]][front[1]+deltas[right][1]])
+                d = left;
+            else if (balls[front[0]+deltas[left][0]][front[1]+deltas[left][1]])
+                d = right;
+            else
+                p = front;
+            if (!isMysteryBox(p[0], p[1]))
+                return space.edgeIndexOf(p[0], p[1]);
+        }
+    }
+
+    private boolean isMysteryBox(int r, int c)
+    {
+        return r > 0 && r <= GRID_SIZE && c > 0 && c <= GRID_SIZE;
+    }
+
+    private boolean[][] toGrid(long[] layout)
+    {
+        boolean[][] grid = new boolean[GRID_SIZE+2][GRID_SIZE+2];
+        for (int r = 1; r <= GRID_SIZE; r++)
+            for (int c = 1; c <= GRID_SIZE; c++)
+                grid[r][c] = LayoutSpace.hasBall(layout, space.cellIndex(r, c));
+        return grid;
+    }
+
+    private long[] randomLayout(Random rnd, long[] layout)
+    {
+        space.unrank((long) (rnd.nextDouble() * space.size()), layout);
+        return layout;
+    }
+
+    /**
+     * @return the layout turned 90° clockwise, so that the ball at (r, c) moves to (c, n+1-r).
+     */
+    private long[] rotate(long[] layout)
+    {
+        long[] rotated = space.newLayout();
+        for (int r = 1; r <= GRID_SIZE; r++)
+            for (int c = 1; c <= GRID_SIZE; c++)
+                if (LayoutSpace.hasBall(layout, space.cellIndex(r, c)))
+                    LayoutSpace.setBall(rotated, space.cellIndex(c, GRID_SIZE+1-r));
+        return rotated;
+    }
+
+    /**
+     * @return the layout flipped left-to-right, so that the ball at (r, c) moves to (r, n+1-c).
+     */
+    private long[] mirror(long[] layout)
+    {
+        long[] mirrored = space.newLayout();
+        for (int r = 1; r <= GRID_SIZE; r++)
+            for (int c = 1; c <= GRID_SIZE; c++)
+                if (LayoutSpace.hasBall(layout, space.cellIndex(r, c)))
+                    LayoutSpace.setBall(mirrored, space.cellIndex(r, GRID_SIZE+1-c));
+        return mirrored;
+    }
+
+    private int rotateEdge(int edge)
+    {
+        return (edge + GRID_SIZE) % (4 * GRID_SIZE);
+    }
+
+    private int mirrorEdge(int edge)
+    {
+        return Math.floorMod(GRID_SIZE - 1 - edge, 4 * GRID_SIZE);
+    }
+
+    @Test
+    void testEdgeNumbering()
+    {
+        for (int edge = 0; edge < space.getNumEdges(); edge++)
+        {
+            int r = space.edgeRow(edge);
+            int c = space.edgeColumn(edge);
+            assertEquals(edge, space.edgeIndexOf(r, c));
+            int[][] deltas = {{0,1},{1,0},{0,-1},{-1,0}};
+            int d = space.edgeDirection(edge);
+            assertTrue(isMysteryBox(r + deltas[d][0], c + deltas[d][1]));
+        }
+        assertEquals(-1, space.edgeIndexOf(0, 0));
+        assertEquals(-1, space.edgeIndexOf(4, 4));
+    }
+
+    @Test
+    void testRankRoundTrip()
+    {
+        assertEquals(7624512, space.size());
+        long[] layout = space.newLayout();
+        space.unrank(0, layout);
+        assertEquals(0, space.rank(layout));
+        space.unrank(space.size()-1, layout);
+        assertEquals(space.size()-1, space.rank(layout));
+
+        Random rnd = new Random(SEED);
+        for (int i = 0; i < 10000; i++)
+        {
+            long rank = (long) (rnd.nextDouble() * space.size());
+            space.unrank(rank, layout);
+            assertEquals(NUM_BALLS, Long.bitCount(layout[0]));
+            assertEquals(rank, space.rank(layout));
+        }
+    }
+
+    @Test
+    void testKnownLayout()
+    {
+        long[] layout = space.newLayout();
+        int[][] balls = {{1,1},{1,2},{1,6},{3,6},{6,2}};
+        for (int[] ball : balls)
+            LayoutSpace.setBall(layout, space.cellIndex(ball[0], ball[1]));
+
+        // the same expectations as BlackBoxPanelTest.testFindExitPoint(), in edge order.
+        int[][] expected = {null,null,{0,3},{9,4},{0,5},null,{0,7},{9,8},
+                            null,{2,9},null,{9,7},{5,9},null,{9,3},{8,0},
+                            {0,8},{4,9},null,{4,0},{0,4},{7,9},null,{7,0},
+                            {8,9},{9,1},null,null,{9,5},null,{2,0},null};
+        for (ShotTracer tracer : tracersUnderTest())
+            for (int edge = 0; edge < space.getNumEdges(); edge++)
+            {
+                int expectedEdge = (expected[edge] == null) ? ShotTracer.HIT :
+                                   space.edgeIndexOf(expected[edge][0], expected[edge][1]);
+                assertEquals(expectedEdge, tracer.trace(layout, edge), "shot from edge "+edge);
+            }
+    }
+
+    @Test
+    void testMatchesReference()
+    {
+        Random rnd = new Random(SEED);
+        long[] layout = space.newLayout();
+        ArrayList<ShotTracer> tracers = tracersUnderTest();
+        for (int i = 0; i < NUM_LAYOUTS; i++)
+        {
+            randomLayout(rnd, layout);
+            boolean[][] grid = toGrid(layout);
+            for (int edge = 0; edge < space.getNumEdges(); edge++)
+            {
+                int expected = referenceTrace(grid, edge);
+                for (ShotTracer tracer : tracers)
+                    if (tracer.trace(layout, edge) != expected)
+                        fail(tracer.getClass().getName()+" disagrees with the reference for edge "+edge+
+                             " of layout "+space.describe(layout));
+            }
+        }
+    }
+
+    @Test
+    void testBitSlicedMatchesClassic()
+    {
+        Random rnd = new Random(SEED + 4);
+        ClassicShotTracer classic = new ClassicShotTracer(space);
+        BitSlicedShotTracer sliced = new BitSlicedShotTracer(space);
+        long[][] layouts = new long[BitSlicedShotTracer.LANES][space.getNumWords()];
+        long[] cellLanes = new long[space.getNumCells()];
+        long[] exitLanes = new long[space.getNumEdges()];
+        int[] results = new int[BitSlicedShotTracer.LANES];
+        for (int group = 0; group < NUM_LAYOUTS / BitSlicedShotTracer.LANES; group++)
+        {
+            // every so often, leave some lanes empty to check that they stay out of the results.
+            int count = (group % 10 == 0) ? 1 + rnd.nextInt(BitSlicedShotTracer.LANES) : BitSlicedShotTracer.LANES;
+            for (int lane = 0; lane < count; lane++)
+                randomLayout(rnd, layouts[lane]);
+            long activeLanes = sliced.sliceLayouts(layouts, count, cellLanes);
+            assertEquals(count, Long.bitCount(activeLanes));
+
+            for (int edge = 0; edge < space.getNumEdges(); edge++)
+            {
+                long hitLanes = sliced.trace(cellLanes, activeLanes, edge, exitLanes);
+                long allLanes = hitLanes;
+                for (long lanes : exitLanes)
+                {
+                    assertEquals(0, allLanes & lanes, "a lane came out twice");
+                    allLanes |= lanes;
+                }
+                assertEquals(activeLanes, allLanes);
+
+                sliced.unsliceResults(exitLanes, hitLanes, results);
+                for (int lane = 0; lane < count; lane++)
+                    if (results[lane] != classic.trace(layouts[lane], edge))
+                        fail("BitSlicedShotTracer disagrees with ClassicShotTracer for edge "+edge+" of layout "+
+                             space.describe(layouts[lane]));
+            }
+        }
+    }
+
+    @Test
+    void testPathsAreReversible()
+    {
+        Random rnd = new Random(SEED + 1);
+        long[] layout = space.newLayout();
+        for (ShotTracer tracer : tracersUnderTest())
+            for (int i = 0; i < NUM_LAYOUTS / 10; i++)
+            {
+                randomLayout(rnd, layout);
+                for (int edge = 0; edge < space.getNumEdges(); edge++)
+                {
+                    // a shot that comes out somewhere else must come back here if fired from there.
+                    int exit = tracer.trace(layout, edge);
+                    if (exit != ShotTracer.HIT)
+                        assertEquals(edge, tracer.trace(layout, exit), "reverse of edge "+edge+" in "+space.describe(layout));
+                }
+            }
+    }
+
+    @Test
+    void testSymmetricLayoutsGiveSymmetricResults()
+    {
+        Random rnd = new Random(SEED + 2);
+        long[] layout = space.newLayout();
+        for (ShotTracer tracer : tracersUnderTest())
+            for (int i = 0; i < NUM_LAYOUTS / 10; i++)
+            {
+                randomLayout(rnd, layout);
+                long[] rotated = rotate(layout);
+                long[] mirrored = mirror(layout);
+                for (int edge = 0; edge < space.getNumEdges(); edge++)
+                {
+                    int exit = tracer.trace(layout, edge);
+                    int rotatedExit = tracer.trace(rotated, rotateEdge(edge));
+                    int mirroredExit = tracer.trace(mirrored, mirrorEdge(edge));
+                    if (exit == ShotTracer.HIT)
+                    {
+                        assertEquals(ShotTracer.HIT, rotatedExit);
+                        assertEquals(ShotTracer.HIT, mirroredExit);
+                    }
+                    else
+                    {
+                        assertEquals(rotateEdge(exit), rotatedExit);
+                        assertEquals(mirrorEdge(exit), mirroredExit);
+                    }
+                }
+            }
+    }
+
+    @Test
+    void testTracePathEndsWhereTraceDoes()
+    {
+        ClassicShotTracer tracer = new ClassicShotTracer(space);
+        int[] path = new int[tracer.getMaxPathLength()];
+        Random rnd = new Random(SEED + 3);
+        long[] layout = space.newLayout();
+        for (int i = 0; i < NUM_LAYOUTS / 100; i++)
+        {
+            randomLayout(rnd, layout);
+            for (int edge = 0; edge < space.getNumEdges(); edge++)
+            {
+                int length = tracer.tracePath(layout, edge, path);
+                int exit = tracer.trace(layout, edge);
+                int lastR = path[length-1] / (GRID_SIZE+2);
+                int lastC = path[length-1] % (GRID_SIZE+2);
+                assertEquals(space.edgeIndexOf(space.edgeRow(edge), space.edgeColumn(edge)), space.edgeIndexOf(path[0] / (GRID_SIZE+2), path[0] % (GRID_SIZE+2)));
+                if (exit == ShotTracer.HIT)
+                    assertTrue(length == 1 || isMysteryBox(lastR, lastC));
+                else
+                    assertEquals(exit, space.edgeIndexOf(lastR, lastC));
+            }
+        }
+    }
+
+    @Test
+    void testSignatureCounting()
+    {
+        LongIntOpenHashMap counts = new LongIntOpenHashMap(4);
+        for (long key = -500; key < 500; key++)
+            counts.addTo(key * 7919, 1);
+        counts.addTo(0, 2);
+        counts.addTo(7919, 5);
+        assertEquals(1000, counts.size());
+        assertEquals(3, counts.get(0));
+        assertEquals(6, counts.get(7919));
+        assertEquals(1, counts.get(-7919));
+        assertEquals(0, counts.get(1));
+
+        // a fingerprint depends only on the results, however they were worked out.
+        ShotTracer tracer = new ClassicShotTracer(space);
+        long[] layout = space.newLayout();
+        randomLayout(new Random(SEED), layout);
+        long[] copy = layout.clone();
+        assertEquals(LayoutSignature.fingerprint(tracer, layout), LayoutSignature.fingerprint(tracer, copy));
+        int[] results = new int[space.getNumEdges()];
+        for (int edge = 0; edge < results.length; edge++)
+            results[edge] = tracer.trace(layout, edge);
+        assertEquals(LayoutSignature.fingerprint(tracer, layout), LayoutSignature.fingerprint(results));
+    }
+
+    @Test
+    void testClassicVariantUsesClassicTracer()
+    {
+        RuleVariant variant = new RuleVariant();
+        assertTrue(variant.isClassic());
+        assertTrue(variant.specialize(space) instanceof ClassicShotTracer);
+        variant.setReflectAtEntry(false);
+        assertTrue(variant.specialize(space) instanceof VariantShotTracer);
+    }
+
+    @Test
+    void testFrontLeftFirstIsMirrorOfClassic()
+    {
+        // swapping left and right in the rules is the same as playing the classic rules on the mirror-image board.
+        RuleVariant variant = new RuleVariant();
+        variant.setDeflectionOrder(RuleVariant.DEFLECT_FRONT_LEFT_FIRST);
+        ShotTracer leftFirst = variant.specialize(space);
+        ShotTracer classic = new ClassicShotTracer(space);
+        Random rnd = new Random(SEED + 5);
+        long[] layout = space.newLayout();
+        for (int i = 0; i < NUM_LAYOUTS / 10; i++)
+        {
+            randomLayout(rnd, layout);
+            long[] mirrored = mirror(layout);
+            for (int edge = 0; edge < space.getNumEdges(); edge++)
+            {
+                int exit = classic.trace(mirrored, mirrorEdge(edge));
+                assertEquals((exit == ShotTracer.HIT) ? ShotTracer.HIT : mirrorEdge(exit), leftFirst.trace(layout, edge));
+            }
+        }
+    }
+
+    @Test
+    void testReversibleVariantsAreReversible()
+    {
+        // (turning off reflection at entry or adding portals makes paths one-way, so those aren't checked here.)
+        RuleVariant reverseIfBoth = new RuleVariant();
+        reverseIfBoth.setDeflectionOrder(RuleVariant.DEFLECT_REVERSE_IF_BOTH);
+        RuleVariant absorbing = new RuleVariant();
+        absorbing.addAbsorbingCell(4, 5);
+        absorbing.addAbsorbingCell(7, 2);
+
+        Random rnd = new Random(SEED + 6);
+        long[] layout = space.newLayout();
+        for (RuleVariant variant : new RuleVariant[]{reverseIfBoth, absorbing})
+        {
+            ShotTracer tracer = variant.specialize(space);
+            for (int i = 0; i < NUM_LAYOUTS / 10; i++)
+            {
+                randomLayout(rnd, layout);
+                for (int edge = 0; edge < space.getNumEdges(); edge++)
+                {
+                    int exit = tracer.trace(layout, edge);
+                    if (exit != ShotTracer.HIT)
+                        assertEquals(edge, tracer.trace(layout, exit));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testVariantRulesOnKnownBoards()
+    {
+        long[] empty = space.newLayout();
+        long[] cornerBall = space.newLayout();
+        LayoutSpace.setBall(cornerBall, space.cellIndex(1, 2));
+
+        // a ball diagonally in front of the entry point reflects the shot - unless that rule is turned off.
+        RuleVariant noEntryReflection = new RuleVariant();
+        noEntryReflection.setReflectAtEntry(false);
+        int fromTop1 = space.edgeIndexOf(0, 1);
+        assertEquals(fromTop1, new ClassicShotTracer(space).trace(cornerBall, fromTop1));
+        assertEquals(space.edgeIndexOf(9, 1), noEntryReflection.specialize(space).trace(cornerBall, fromTop1));
+
+        RuleVariant absorbing = new RuleVariant();
+        absorbing.addAbsorbingCell(4, 4);
+        ShotTracer absorbingTracer = absorbing.specialize(space);
+        assertEquals(ShotTracer.HIT, absorbingTracer.trace(empty, space.edgeIndexOf(0, 4)));
+        assertEquals(ShotTracer.HIT, absorbingTracer.trace(empty, space.edgeIndexOf(4, 9)));
+        assertEquals(space.edgeIndexOf(9, 5), absorbingTracer.trace(empty, space.edgeIndexOf(0, 5)));
+
+        // a shot going down column 3 drops into the portal at (2, 3) and carries on down column 6 from (5, 6).
+        RuleVariant portal = new RuleVariant();
+        portal.addPortal(2, 3, 5, 6);
+        ShotTracer portalTracer = portal.specialize(space);
+        assertEquals(space.edgeIndexOf(9, 6), portalTracer.trace(empty, space.edgeIndexOf(0, 3)));
+        assertEquals(space.edgeIndexOf(0, 3), portalTracer.trace(empty, space.edgeIndexOf(9, 6)));
+        assertEquals(space.edgeIndexOf(5, 0), portalTracer.trace(empty, space.edgeIndexOf(2, 9)));
+
+        // with no reflection at entry, a shot can slip past (1,3) and (1,5) into (2,4), and then spin there forever.
+        long[] trap = space.newLayout();
+        int[][] diagonals = {{1,3},{1,5},{3,3},{3,5}};
+        for (int[] ball : diagonals)
+            LayoutSpace.setBall(trap, space.cellIndex(ball[0], ball[1]));
+        assertEquals(ShotTracer.HIT, noEntryReflection.specialize(space).trace(trap, space.edgeIndexOf(0, 4)));
+    }
+}